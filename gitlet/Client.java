@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+
+/** A thin client that forwards a gitlet command to the Server of the
+ *  repository in the working directory and prints what it answers.
+ *  Usage is that of Main:
+ *      java gitlet.Client ARGS
+ *  When no server is running, the command runs in this process instead.
+ *  This class only loads what it needs to talk to the server.
+ *  @author Tianyi Xu
+ */
+public class Client {
+    /** The socket of the server of the repository in the working directory. */
+    static final File SOCKET = new File(new File(System.getProperty("user.dir"), ".gitlet"),
+            "daemon.sock");
+
+    public static void main(String... args) {
+        int status = forward(args);
+        if (status < 0) {
+            Main.main(args);
+            return;
+        }
+        System.exit(status);
+    }
+
+    /** Send the command ARGS to the server and copy its output to ours.
+     *  Return the exit status of the command, or -1 if no server is
+     *  running. A null ARGS only checks that the server is up. */
+    static int forward(String[] args) {
+        if (!SOCKET.exists()) {
+            return -1;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException excp) {
+            /* a socket left behind by a server that is gone */
+            return -1;
+        }
+        try (SocketChannel c = channel;
+             DataOutputStream out = new DataOutputStream(Channels.newOutputStream(c));
+             DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(Channels.newInputStream(c)))) {
+            if (args == null) {
+                out.writeInt(-1);
+                return 0;
+            }
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            byte[] buffer = new byte[1 << 16];
+            while (true) {
+                byte kind = in.readByte();
+                if (kind == Server.EXIT) {
+                    System.out.flush();
+                    return in.readInt();
+                }
+                OutputStream target = kind == Server.STDERR ? System.err : System.out;
+                int len = in.readInt();
+                while (len > 0) {
+                    int n = in.read(buffer, 0, Math.min(len, buffer.length));
+                    if (n < 0) {
+                        throw new EOFException();
+                    }
+                    target.write(buffer, 0, n);
+                    len -= n;
+                }
+            }
+        } catch (IOException excp) {
+            System.err.println("Lost the connection to the gitlet server.");
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/** Benchmark of the encodings of Commit and GTTree against Java
+ *  serialization, which they replaced.  Usage:
+ *      java gitlet.CodecBenchmark [COMMITS [FILES [ROUNDS]]]
+ *  Makes a scratch repository with COMMITS commits (default 1000) and a
+ *  state with FILES staged files and ten times as many files in the stat
+ *  cache (default 1000), then times ROUNDS (default 20) rounds of
+ *  encoding and decoding each of them both ways.
+ *  @author Tianyi Xu
+ */
+public class CodecBenchmark {
+
+    public static void main(String... args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int files = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        File dir = Files.createTempDirectory("gitlet-codec").toFile();
+        new Repository(dir).makeCurrent();
+        GTTree repo = new GTTree();
+        repo.init();
+
+        List<Commit> commits = new ArrayList<>();
+        String parent = repo.branches.get("master");
+        for (int i = 0; i < n; i++) {
+            Commit c = new Commit("commit number " + i + " of the benchmark", parent,
+                    i % 10 == 9 ? commits.get(i - 5).getID() : null, Tree.EMPTY.getID());
+            c.saveCommit();
+            commits.add(c);
+            parent = c.getID();
+        }
+
+        File sample = new File(dir, "sample.txt");
+        Utils.writeContents(sample, "contents");
+        IndexEntry entry = new IndexEntry(Utils.sha1("contents"), sample);
+        for (int i = 0; i < files; i++) {
+            repo.stagedFiles.put("dir" + i % 10 + "/staged" + i + ".txt",
+                    entry.withSha1(Utils.sha1("staged " + i)));
+        }
+        for (int i = 0; i < 10 * files; i++) {
+            repo.index.put("dir" + i % 100 + "/file" + i + ".txt",
+                    entry.withSha1(Utils.sha1("file " + i)));
+        }
+        for (int i = 0; i < 10; i++) {
+            repo.branches.put("branch" + i, parent);
+        }
+
+        System.out.printf("%-28s %12s %12s %10s%n", "", "encode ns", "decode ns", "bytes");
+        compare("commit, Java serialization", commits, rounds,
+                Utils::serialize, c -> Utils.deserialize(c, Commit.class));
+        compare("commit, Commit.encode", commits, rounds,
+                Commit::encode, c -> Commit.decode(null, c));
+        List<GTTree> state = List.of(repo);
+        compare("state, Java serialization", state, rounds,
+                Utils::serialize, t -> Utils.deserialize(t, GTTree.class));
+        compare("index, GTTree.encodeIndex", state, rounds,
+                GTTree::encodeIndex, GTTree::decodeIndex);
+    }
+
+    /** Print the mean time to encode each of OBJECTS with ENCODE and to
+     *  decode them back with DECODE over ROUNDS rounds, after as many
+     *  rounds of warming up, and the mean size of their encodings. */
+    private static <T> void compare(String name, List<T> objects, int rounds,
+                                    Function<T, byte[]> encode,
+                                    Function<byte[], Object> decode) {
+        List<byte[]> encoded = new ArrayList<>();
+        long size = 0;
+        for (T obj : objects) {
+            byte[] bytes = encode.apply(obj);
+            encoded.add(bytes);
+            size += bytes.length;
+        }
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        for (int r = -rounds; r < rounds; r++) {
+            long start = System.nanoTime();
+            for (T obj : objects) {
+                encode.apply(obj);
+            }
+            long middle = System.nanoTime();
+            for (byte[] bytes : encoded) {
+                decode.apply(bytes);
+            }
+            long end = System.nanoTime();
+            if (r >= 0) {
+                encodeNanos += middle - start;
+                decodeNanos += end - middle;
+            }
+        }
+        long ops = (long) rounds * objects.size();
+        System.out.printf("%-28s %12d %12d %10d%n", name, encodeNanos / ops,
+                decodeNanos / ops, size / objects.size());
+    }
+}
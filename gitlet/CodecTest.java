@@ -0,0 +1,112 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests that the hand written encodings of commits and of the index
+ *  read back what was written.
+ *  @author Tianyi Xu
+ */
+public class CodecTest {
+
+    /* Characters outside the Basic Multilingual Plane, two chars each,
+     * with the same high surrogate */
+    private static final String GRIN = "\uD83D\uDE00";
+    private static final String BEAM = "\uD83D\uDE01";
+    private static final String CLEF = "\uD834\uDD1E";
+    private static final String DRUM = "\uD834\uDD1F";
+
+    @Test
+    public void commitRoundTrip() {
+        Repository repo = UnitTest.scratchRepository();
+        String root = repo.log().get(0).getID();
+        Commit c = new Commit("a message\nof two lines, \u00fcn\u00efc\u00f6d\u00e9 and " + GRIN,
+                root, Tree.EMPTY.getID());
+        c.saveCommit();
+        Commit merge = new Commit("merge", c.getID(), root, Tree.EMPTY.getID());
+
+        for (Commit expected : List.of(c, merge)) {
+            Commit decoded = Commit.decode(expected.getID(), expected.encode());
+            assertEquals(expected.getID(), decoded.getID());
+            assertEquals(expected.getMessage(), decoded.getMessage());
+            assertEquals(expected.getTimestamp(), decoded.getTimestamp());
+            assertEquals(expected.getParents(), decoded.getParents());
+            assertEquals(expected.getTree(), decoded.getTree());
+            assertEquals(expected.getGeneration(), decoded.getGeneration());
+            assertEquals(expected.toString(), decoded.toString());
+        }
+    }
+
+    @Test
+    public void indexRoundTrip() {
+        checkIndexRoundTrip(List.of("a.txt", "a/b.txt", "a/c.txt", "ab/c.txt", "b", "\u00e9.txt"));
+    }
+
+    @Test
+    public void indexRoundTripOfNamesOutsideTheBmp() {
+        /* consecutive names that share a high surrogate but not the low one */
+        checkIndexRoundTrip(List.of(GRIN, BEAM, "d/" + GRIN + "x", "d/" + BEAM,
+                "a" + GRIN + "b", "a" + BEAM + "b", CLEF + "/" + DRUM));
+    }
+
+    /** Check that an index of FILENAMES, as staged files, files staged for
+     *  removal and the stat cache, reads back as written. */
+    private static void checkIndexRoundTrip(List<String> fileNames) {
+        Repository repo = UnitTest.scratchRepository();
+        File sample = new File(repo.root, "sample.txt");
+        Utils.writeContents(sample, "contents");
+        IndexEntry entry = new IndexEntry(Utils.sha1("contents"), sample);
+
+        GTTree t = new GTTree();
+        for (String name : fileNames) {
+            t.stagedFiles.put(name, entry.withSha1(Utils.sha1("staged " + name)));
+            t.stagedrmFiles.add(name);
+            t.index.put(name, entry);
+        }
+        byte[] encoded = t.encodeIndex();
+        GTTree decoded = GTTree.decodeIndex(encoded);
+
+        assertEquals(t.stagedFiles.keySet(), decoded.stagedFiles.keySet());
+        assertEquals(t.stagedrmFiles, decoded.stagedrmFiles);
+        assertEquals(t.index.keySet(), decoded.index.keySet());
+        List<String> sha1s = new ArrayList<>();
+        for (String name : fileNames) {
+            sha1s.add(decoded.stagedFiles.get(name).getSha1());
+            assertEquals(entry.getSha1(), decoded.index.get(name).getSha1());
+            assertEquals(entry.getMtime(), decoded.index.get(name).getMtime());
+            assertEquals(entry.getSize(), decoded.index.get(name).getSize());
+        }
+        for (String name : fileNames) {
+            assertTrue(sha1s.contains(Utils.sha1("staged " + name)));
+        }
+        assertArrayEquals(encoded, decoded.encodeIndex());
+    }
+
+    @Test
+    public void stagingNamesOutsideTheBmp() {
+        if (!Charset.forName(System.getProperty("sun.jnu.encoding", "UTF-8"))
+                .newEncoder().canEncode(GRIN)) {
+            /* file names of this platform can't hold them */
+            return;
+        }
+        Repository repo = UnitTest.scratchRepository();
+        Utils.writeContents(new File(repo.root, GRIN), "one");
+        Utils.writeContents(new File(repo.root, BEAM), "two");
+        repo.add(GRIN);
+        repo.add(BEAM);
+
+        /* the staging area read back from the index */
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        assertEquals(List.of(GRIN, BEAM), reopened.status().staged);
+        reopened.commit("two emoji");
+        assertEquals(List.of(GRIN, BEAM),
+                new ArrayList<>(reopened.log().get(0).getBlobs().keySet()));
+    }
+}
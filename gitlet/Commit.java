@@ -1,8 +1,15 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Formatter;
 import java.util.Map;
 
@@ -11,27 +18,73 @@ import java.util.Map;
  */
 
 public class Commit implements Serializable {
+    /* that of the commits stored with Java serialization by the first
+     * versions with trees, still read until migrate rewrites them; those
+     * of the original gitlet are told apart and read by LegacyFormat */
+    private static final long serialVersionUID = 842871170324916006L;
+    /* Start of the stored form of a commit: "gcm" and the version */
+    private static final byte[] MAGIC = {'g', 'c', 'm', 1};
+
     private String message;
     private Date timestamp;
     private String parent;
     private String parent2;
-    /* length from the root commit */
-    private int len;
-    /* File name -> content sha1*/
-    private Map<String, String> blobs;
+    /* generation number: length of the longest path from the root commit */
+    private int generation;
+    /* id of the tree of the root directory */
+    private String tree;
+    /* File path -> content sha1, read from the tree when first needed */
+    private transient Map<String, String> blobs;
+    /* sha1 of the canonical encoding, computed once on creation */
+    private final String id;
+
+    public Commit(String message, String parentSha1, String tree) {
+        this(message, parentSha1, null, tree);
+    }
 
-    public Commit(String message, String parentSha1, Map<String, String> blobs) {
+    public Commit(String message, String parentSha1, String parent2Sha1,
+                  String tree) {
         this.message = message;
         if (parentSha1 == null) {
             timestamp = new Date(0);
-            len = 0;
+            generation = 0;
         } else {
             timestamp = new Date();
-            len = readCommit(parentSha1).len + 1;
+            CommitGraph graph = Repository.current().graph;
+            generation = graph.generation(graph.position(parentSha1)) + 1;
+            if (parent2Sha1 != null) {
+                generation = Math.max(generation,
+                        graph.generation(graph.position(parent2Sha1)) + 1);
+            }
         }
         this.parent = parentSha1;
-        this.blobs = blobs;
+        this.parent2 = parent2Sha1;
+        this.tree = tree;
+        this.id = Utils.sha1(canonicalBytes());
+    }
 
+    /** A commit with the given fields, as converted by migrate from the
+     *  original gitlet, which keep the time it was made. */
+    Commit(String message, Date timestamp, String parent, String parent2,
+           int generation, String tree) {
+        this.message = message;
+        this.timestamp = timestamp;
+        this.parent = parent;
+        this.parent2 = parent2;
+        this.generation = generation;
+        this.tree = tree;
+        this.id = Utils.sha1(canonicalBytes());
+    }
+
+    private Commit(String id, String message, Date timestamp, String parent,
+                   String parent2, int generation, String tree) {
+        this.id = id;
+        this.message = message;
+        this.timestamp = timestamp;
+        this.parent = parent;
+        this.parent2 = parent2;
+        this.generation = generation;
+        this.tree = tree;
     }
 
     public String getMessage() {
@@ -46,59 +99,168 @@ public class Commit implements Serializable {
         return this.parent2;
     }
 
-    public int getLen() {
-        return this.len;
+    public Date getTimestamp() {
+        return this.timestamp;
+    }
+
+    public int getGeneration() {
+        return this.generation;
     }
 
-    public void setParent2(String parentID) {
-        this.parent2 = parentID;
+    /** Return the ids of the parents of this commit, first parent first. */
+    public List<String> getParents() {
+        if (parent == null) {
+            return Collections.emptyList();
+        } else if (parent2 == null) {
+            return Collections.singletonList(parent);
+        }
+        return Arrays.asList(parent, parent2);
     }
 
+    public String getTree() {
+        return this.tree;
+    }
+
+    /** Return every file of the commit, mapping its '/' separated path
+     *  to its blob id. Don't modify the result. */
     public Map<String, String> getBlobs() {
+        if (this.blobs == null) {
+            this.blobs = Tree.flatten(tree);
+            Repository.current().cache.reweigh(this);
+        }
         return this.blobs;
     }
 
+    /** Return the number of files of the commit if they were already read
+     *  from its tree, and 0 otherwise. */
+    int loadedSize() {
+        return this.blobs == null ? 0 : this.blobs.size();
+    }
+
     public String getID() {
-        byte[] commitSerialized = Utils.serialize(this);
-        return Utils.sha1(commitSerialized);
+        return this.id;
+    }
+
+    /** A stable encoding of everything that identifies the commit:
+     *  message, timestamp, parents and the tree. */
+    private byte[] canonicalBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            writeFields(out);
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding commit.");
+        }
+        return bytes.toByteArray();
+    }
+
+    private void writeFields(DataOutputStream out) throws IOException {
+        Utils.writeString(out, message);
+        out.writeLong(timestamp.getTime());
+        Utils.writeString(out, parent);
+        Utils.writeString(out, parent2);
+        Utils.writeString(out, tree);
+    }
+
+    /** Return the stored form of this commit: MAGIC, the fields of
+     *  canonicalBytes, then the generation number. */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new Utils.Bytes(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.write(MAGIC);
+            writeFields(out);
+            out.writeInt(generation);
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding commit.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the commit ID stored as STORED, either by encode or, in
+     *  repositories that haven't been migrated, by Java serialization.
+     *  Throw if it was stored by the original gitlet. */
+    static Commit decode(String id, byte[] stored) {
+        if (!isEncoded(stored)) {
+            if (LegacyFormat.isOriginal(stored)) {
+                throw Utils.error(LegacyFormat.MIGRATE);
+            }
+            return Utils.deserialize(stored, Commit.class);
+        }
+        try (DataInputStream in = Utils.dataInput(stored)) {
+            in.skipBytes(MAGIC.length);
+            String message = Utils.readString(in);
+            Date timestamp = new Date(in.readLong());
+            String parent = Utils.readString(in);
+            String parent2 = Utils.readString(in);
+            String tree = Utils.readString(in);
+            return new Commit(id, message, timestamp, parent, parent2, in.readInt(), tree);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupted commit %s.", id);
+        }
+    }
+
+    /** Return true if STORED was written by encode. */
+    static boolean isEncoded(byte[] stored) {
+        return stored.length >= MAGIC.length
+                && Arrays.equals(stored, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
     }
 
     void saveCommit() {
-        Utils.writeObject(Utils.join(GTTree.COMMITS_DIR, getID()), this);
+        Repository repo = Repository.current();
+        repo.commits.write(getID(), encode());
+        repo.commitIndex.add(getID());
+        repo.graph.add(this);
+        repo.log.add(this);
+        repo.cache.put(this);
     }
 
-   static Commit readCommit(String commitId) {
-        return Utils.readObject(Utils.join(GTTree.COMMITS_DIR, commitId), Commit.class);
+    /** Read the commit COMMITID, from the cache if it was read before. */
+    static Commit readCommit(String commitId) {
+        Repository repo = Repository.current();
+        Commit c = repo.cache.get(commitId);
+        if (c == null) {
+            c = decode(commitId, repo.commits.read(commitId));
+            repo.cache.put(c);
+        }
+        return c;
     }
 
     /** Get the kth parent commit from the current commmit
-     * Assume the k <= len */
+     * Assume k is at most the number of first parents of the commit */
     Commit getParentCommit(int k) {
-        Commit c = this;
+        if (k == 0) {
+            return this;
+        }
+        /* only the commit at the end of the walk is read */
+        CommitGraph graph = Repository.current().graph;
+        int pos = graph.position(id);
         for (int i = 0; i < k; i++) {
-            c = readCommit(c.parent);
+            pos = graph.parent1(pos);
         }
-        return c;
+        return readCommit(graph.id(pos));
     }
 
+    /** Return true if the commit COMMITID is a proper ancestor of this
+     *  commit, through either parent. */
     boolean isAncestor(String commitID) {
-        Commit c = this;
-        while (c!= null) {
-            if (c.getParent().equals(commitID)) {
-                return true;
-            } else {
-                c = c.getParentCommit(1);
-            }
-        }
-        return false;
+        return !id.equals(commitID) && Repository.current().bitmaps.reaches(id, commitID);
     }
 
 
     @Override
     public String toString() {
+        return format(id, parent, parent2, timestamp, message);
+    }
+
+    /** Return the log entry of the commit ID with the given metadata. */
+    static String format(String id, String parent, String parent2, Date timestamp,
+                         String message) {
         Formatter out = new Formatter();
         out.format("===\n");
-        out.format("commit " + getID() + "\n");
+        out.format("commit " + id + "\n");
         if (parent2 != null) {
             out.format("Merge: " + parent.substring(0, 7) + " " + parent2.substring(0, 7) + "\n");
         }
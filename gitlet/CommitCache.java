@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded LRU cache of deserialized commits keyed by commit id.
+ *  The size of a commit is counted as one plus the number of files it
+ *  holds in memory, so a few huge commits can't hold the whole budget.
+ *  Commits are cached before their files are loaded, so a commit is
+ *  weighed again when it loads them (see reweigh).
+ *  @author Tianyi Xu
+ */
+class CommitCache {
+    /** Default budget, in tracked files, of all cached commits. */
+    static final long DEFAULT_CAPACITY = 1 << 18;
+
+    /* Commit id -> commit, in access order */
+    private final LinkedHashMap<String, Commit> commits;
+    /* Commit id -> weight of the commit when it was last weighed */
+    private final Map<String, Long> weights;
+    /* Maximum total weight of the cached commits */
+    private final long capacity;
+    /* Current total weight of the cached commits */
+    private long weight;
+
+    private long hits;
+    private long misses;
+
+    CommitCache(long capacity) {
+        this.capacity = capacity;
+        commits = new LinkedHashMap<>(16, 0.75f, true);
+        weights = new HashMap<>();
+    }
+
+    /** Return the cached commit with id COMMITID, or null if it isn't cached. */
+    synchronized Commit get(String commitId) {
+        Commit c = commits.get(commitId);
+        if (c == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return c;
+    }
+
+    /** Cache the commit C, evicting the least recently used commits
+     *  until the cache fits its capacity again. */
+    synchronized void put(Commit c) {
+        commits.put(c.getID(), c);
+        long now = weigh(c);
+        Long old = weights.put(c.getID(), now);
+        if (old != null) {
+            weight -= old;
+        }
+        weight += now;
+        evict(c);
+    }
+
+    /** Weigh the commit C again, which has just loaded its files, if it
+     *  is the cached commit of its id, evicting others as put does. */
+    synchronized void reweigh(Commit c) {
+        Long old = weights.get(c.getID());
+        if (old == null || commits.get(c.getID()) != c) {
+            return;
+        }
+        long now = weigh(c);
+        weights.put(c.getID(), now);
+        weight += now - old;
+        evict(c);
+    }
+
+    /** Evict the least recently used commits other than KEEP until the
+     *  cache fits its capacity again. */
+    private void evict(Commit keep) {
+        Iterator<Map.Entry<String, Commit>> eldest = commits.entrySet().iterator();
+        while (weight > capacity && eldest.hasNext()) {
+            Commit evicted = eldest.next().getValue();
+            if (evicted == keep) {
+                continue;
+            }
+            eldest.remove();
+            weight -= weights.remove(evicted.getID());
+        }
+    }
+
+    synchronized void clear() {
+        commits.clear();
+        weights.clear();
+        weight = 0;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    private static long weigh(Commit c) {
+        return c.loadedSize() + 1;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("commit cache: %d hits, %d misses, %d commits, weight %d/%d",
+                hits, misses, commits.size(), weight, capacity);
+    }
+}
@@ -0,0 +1,107 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+/** Tests of the bounds and counters of the cache of commits.
+ *  @author Tianyi Xu
+ */
+public class CommitCacheTest {
+
+    /** Return a commit of no files, distinct for each N. */
+    private static Commit commit(int n) {
+        return new Commit("commit " + n, new Date(n), null, null, 0, Tree.EMPTY.getID());
+    }
+
+    @Test
+    public void leastRecentlyUsedCommitsAreEvicted() {
+        CommitCache cache = new CommitCache(3);
+        Commit a = commit(1), b = commit(2), c = commit(3), d = commit(4);
+        cache.put(a);
+        cache.put(b);
+        cache.put(c);
+        assertSame(a, cache.get(a.getID()));
+        cache.put(d);
+
+        assertNull(cache.get(b.getID()));
+        assertSame(a, cache.get(a.getID()));
+        assertSame(c, cache.get(c.getID()));
+        assertSame(d, cache.get(d.getID()));
+        assertEquals(4, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        /* putting a commit again doesn't count it twice */
+        cache.put(d);
+        assertSame(a, cache.get(a.getID()));
+        assertEquals("commit cache: 5 hits, 1 misses, 3 commits, weight 3/3",
+                cache.toString());
+        cache.clear();
+        assertNull(cache.get(d.getID()));
+    }
+
+    @Test
+    public void commitsWeighTheFilesTheyHaveLoaded() {
+        Repository repo = UnitTest.scratchRepository();
+        for (String name : new String[] {"a.txt", "b.txt", "d/c.txt", "d/e.txt"}) {
+            File file = new File(repo.root, name);
+            file.getParentFile().mkdirs();
+            Utils.writeContents(file, name);
+            repo.add(name);
+        }
+        String id = repo.commit("four files");
+        /* read anew, before its files are loaded */
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        Commit four = Commit.readCommit(id);
+
+        CommitCache cache = new CommitCache(5);
+        Commit small = commit(1);
+        cache.put(small);
+        cache.put(four);
+        assertEquals(0, four.loadedSize());
+        assertTrue(cache.toString(), cache.toString().endsWith("2 commits, weight 2/5"));
+
+        /* loading its files makes it weigh 5, which evicts the other */
+        assertEquals(4, four.getBlobs().size());
+        cache.reweigh(four);
+        assertTrue(cache.toString(), cache.toString().endsWith("1 commits, weight 5/5"));
+        assertNull(cache.get(small.getID()));
+        cache.put(commit(2));
+        assertNull(cache.get(four.getID()));
+        assertNotNull(cache.get(commit(2).getID()));
+
+        /* a commit over the whole budget is still kept while it is the
+         * last one put, and a commit not cached isn't weighed */
+        CommitCache tiny = new CommitCache(2);
+        tiny.put(commit(3));
+        tiny.put(four);
+        assertSame(four, tiny.get(four.getID()));
+        assertNull(tiny.get(commit(3).getID()));
+        tiny.reweigh(commit(3));
+        assertTrue(tiny.toString(), tiny.toString().endsWith("1 commits, weight 5/2"));
+    }
+
+    @Test
+    public void readCommitIsAnsweredFromTheCache() {
+        Repository repo = UnitTest.scratchRepository();
+        Utils.writeContents(new File(repo.root, "f.txt"), "one");
+        repo.add("f.txt");
+        String id = repo.commit("one");
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+
+        long misses = reopened.cache.getMisses();
+        Commit read = Commit.readCommit(id);
+        assertEquals(misses + 1, reopened.cache.getMisses());
+        long hits = reopened.cache.getHits();
+        for (int i = 0; i < 3; i++) {
+            assertSame(read, Commit.readCommit(id));
+        }
+        assertEquals(hits + 3, reopened.cache.getHits());
+        assertEquals(misses + 1, reopened.cache.getMisses());
+    }
+}
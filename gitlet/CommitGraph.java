@@ -0,0 +1,290 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A compact table of the shape of the history: for every commit its
+ *  id, the positions of its parents in the table, its generation number
+ *  and its timestamp. Walks over the history read the table through a
+ *  memory-mapped buffer and never load commit bodies.
+ *
+ *  Layout: "GCG1", the number of sorted records int, then fixed size
+ *  records: id (20 bytes), first parent int, second parent int (-1 for
+ *  none), generation int, timestamp long. The first records are sorted
+ *  by id and found by binary search. New commits are appended after them
+ *  in creation order, and once there are too many of those the whole
+ *  table is rewritten sorted. The records an instance appends are also
+ *  kept in memory, so it needn't map the table again after each commit.
+ *  @author Tianyi Xu
+ */
+class CommitGraph {
+    private static final byte[] MAGIC = {'G', 'C', 'G', '1'};
+    private static final int HEADER = 8;
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    private static final int RECORD = ID_BYTES + 4 + 4 + 4 + 8;
+    /* Most appended records allowed before the table is rewritten sorted */
+    private static final int MAX_UNSORTED = 1024;
+
+    private final File file;
+
+    /* The mapped table and what was learned about it, null until used */
+    private MappedByteBuffer table;
+    private int sorted;
+    private int size;
+    /* The number of records mapped, and the records add appended to the
+     * file since, which are read from here rather than mapped again */
+    private int mapped;
+    private ByteBuffer appended;
+    /* Id -> position of the appended records */
+    private Map<ObjectId, Integer> unsorted;
+
+    CommitGraph(File file) {
+        this.file = file;
+    }
+
+    /** Return the position of the commit COMMITID, or -1 if it isn't in
+     *  the table. */
+    synchronized int position(String commitId) {
+        load();
+        ObjectId key = ObjectId.fromHex(commitId);
+        Integer pos = unsorted.get(key);
+        if (pos != null) {
+            return pos;
+        }
+        int lo = 0, hi = sorted - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = -key.compareTo(table, HEADER + mid * RECORD);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Forget the mapped table, for when another process may have added
+     *  to it. */
+    synchronized void invalidate() {
+        table = null;
+    }
+
+    /** Return the number of commits in the table. */
+    synchronized int size() {
+        load();
+        return size;
+    }
+
+    /** Return the number of records sorted by id, which changes whenever
+     *  the table is rewritten and with it the positions of the commits. */
+    synchronized int sortedSize() {
+        load();
+        return sorted;
+    }
+
+    synchronized String id(int pos) {
+        load();
+        byte[] id = new byte[ID_BYTES];
+        records(pos).get(offset(pos), id);
+        return Utils.toHex(id);
+    }
+
+    /** Return the position of the first parent of the commit at POS, or -1. */
+    synchronized int parent1(int pos) {
+        load();
+        return records(pos).getInt(offset(pos) + ID_BYTES);
+    }
+
+    /** Return the position of the second parent of the commit at POS, or -1. */
+    synchronized int parent2(int pos) {
+        load();
+        return records(pos).getInt(offset(pos) + ID_BYTES + 4);
+    }
+
+    synchronized int generation(int pos) {
+        load();
+        return records(pos).getInt(offset(pos) + ID_BYTES + 8);
+    }
+
+    synchronized long timestamp(int pos) {
+        load();
+        return records(pos).getLong(offset(pos) + ID_BYTES + 12);
+    }
+
+    /** Return the positions of the parents of the commit at POS. */
+    int[] parents(int pos) {
+        int p1 = parent1(pos);
+        int p2 = parent2(pos);
+        if (p1 < 0) {
+            return new int[0];
+        } else if (p2 < 0) {
+            return new int[] {p1};
+        }
+        return new int[] {p1, p2};
+    }
+
+    /** Add the newly saved commit C, whose parents are already in the table. */
+    synchronized void add(Commit c) {
+        /* a table rebuilt just now already has the commit */
+        if (position(c.getID()) >= 0) {
+            return;
+        }
+        if (size - sorted >= MAX_UNSORTED) {
+            rewrite(null);
+            load();
+        }
+        int p1 = c.getParent() == null ? -1 : position(c.getParent());
+        int p2 = c.getParent2() == null ? -1 : position(c.getParent2());
+        byte[] record = ByteBuffer.allocate(RECORD).put(Utils.fromHex(c.getID()))
+                .putInt(p1).putInt(p2).putInt(c.getGeneration())
+                .putLong(c.getTimestamp().getTime()).array();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(HEADER + (long) size * RECORD);
+            out.write(record);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (appended.remaining() < RECORD) {
+            ByteBuffer larger = ByteBuffer.allocate(2 * appended.capacity() + RECORD);
+            larger.put(appended.flip());
+            appended = larger;
+        }
+        appended.put(record);
+        unsorted.put(ObjectId.fromHex(c.getID()), size);
+        size += 1;
+    }
+
+    /** Return the buffer holding the record at POS. */
+    private ByteBuffer records(int pos) {
+        return pos < mapped ? table : appended;
+    }
+
+    /** Return the offset of the record at POS in records(POS). */
+    private int offset(int pos) {
+        return pos < mapped ? HEADER + pos * RECORD : (pos - mapped) * RECORD;
+    }
+
+    /** Map the table, building it from the commits first if there is
+     *  none, as in repositories created before it was introduced. */
+    private void load() {
+        if (table != null) {
+            return;
+        }
+        if (!file.isFile()) {
+            List<Commit> commits = new ArrayList<>();
+            for (String commitId : Repository.current().commits.ids()) {
+                commits.add(Commit.readCommit(commitId));
+            }
+            rewrite(commits);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            table = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        int newSorted = table.getInt(MAGIC.length);
+        /* a record cut short by a crash is ignored */
+        int newSize = (table.capacity() - HEADER) / RECORD;
+        /* records are only appended until the table is rewritten, which
+         * sorts more of them, so only those appended since are read */
+        int from = size;
+        if (unsorted == null || newSorted != sorted || newSize < size) {
+            unsorted = new HashMap<>();
+            from = newSorted;
+        }
+        sorted = newSorted;
+        size = newSize;
+        mapped = newSize;
+        appended = ByteBuffer.allocate(0);
+        for (int pos = from; pos < size; pos++) {
+            unsorted.put(ObjectId.read(table, HEADER + pos * RECORD), pos);
+        }
+    }
+
+    /** Write the table with every record sorted by id. The records are
+     *  those of COMMITS, or of the current table if COMMITS is null. */
+    private void rewrite(List<Commit> commits) {
+        int n = commits == null ? size : commits.size();
+        String[] ids = new String[n];
+        int[][] parents = new int[n][];
+        int[] generations = new int[n];
+        long[] timestamps = new long[n];
+        for (int i = 0; i < n; i++) {
+            if (commits == null) {
+                ids[i] = id(i);
+                generations[i] = generation(i);
+                timestamps[i] = timestamp(i);
+            } else {
+                ids[i] = commits.get(i).getID();
+                generations[i] = commits.get(i).getGeneration();
+                timestamps[i] = commits.get(i).getTimestamp().getTime();
+            }
+        }
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> ids[i]));
+        Map<String, Integer> newPosition = new HashMap<>();
+        for (int pos = 0; pos < n; pos++) {
+            newPosition.put(ids[order[pos]], pos);
+        }
+        for (int i = 0; i < n; i++) {
+            String p1;
+            String p2;
+            if (commits == null) {
+                p1 = parent1(i) < 0 ? null : ids[parent1(i)];
+                p2 = parent2(i) < 0 ? null : ids[parent2(i)];
+            } else {
+                p1 = commits.get(i).getParent();
+                p2 = commits.get(i).getParent2();
+            }
+            parents[i] = new int[] {p1 == null ? -1 : newPosition.get(p1),
+                p2 == null ? -1 : newPosition.get(p2)};
+        }
+
+        File tmp = Utils.tempFile(file.getParentFile(), "." + file.getName() + ".");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+            out.write(MAGIC);
+            out.writeInt(n);
+            for (int pos = 0; pos < n; pos++) {
+                int i = order[pos];
+                out.write(Utils.fromHex(ids[i]));
+                out.writeInt(parents[i][0]);
+                out.writeInt(parents[i][1]);
+                out.writeInt(generations[i]);
+                out.writeLong(timestamps[i]);
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        table = null;
+    }
+}
@@ -0,0 +1,152 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests of the table of the shape of the history.
+ *  @author Tianyi Xu
+ */
+public class CommitGraphTest {
+
+    /** Commit CONTENTS as FILENAME in REPO with MESSAGE, and return the
+     *  commit id. */
+    private static String commit(Repository repo, String fileName, String contents,
+                                 String message) {
+        Utils.writeContents(new File(repo.root, fileName), contents);
+        repo.add(fileName);
+        return repo.commit(message);
+    }
+
+    /** Return a repository whose master has two commits, then merges a
+     *  branch side of one commit, then has one more. Its commit ids are
+     *  put in IDS, initial commit first. */
+    private static Repository repositoryWithMerge(List<String> ids) {
+        Repository repo = UnitTest.scratchRepository();
+        ids.add(repo.log().get(0).getID());
+        ids.add(commit(repo, "f.txt", "1", "one"));
+        repo.branch("side");
+        ids.add(commit(repo, "f.txt", "2", "two"));
+        repo.checkout("side");
+        ids.add(commit(repo, "g.txt", "3", "side"));
+        repo.checkout("master");
+        repo.merge("side");
+        ids.add(repo.log().get(0).getID());
+        ids.add(commit(repo, "f.txt", "4", "after"));
+        return repo;
+    }
+
+    /** Check that GRAPH holds each commit of IDS as it is stored. */
+    private static void checkRecords(CommitGraph graph, List<String> ids) {
+        assertEquals(ids.size(), graph.size());
+        for (String id : ids) {
+            Commit c = Commit.readCommit(id);
+            int pos = graph.position(id);
+            assertTrue(id, pos >= 0);
+            assertEquals(id, graph.id(pos));
+            List<String> parents = new ArrayList<>();
+            for (int p : graph.parents(pos)) {
+                parents.add(graph.id(p));
+            }
+            assertEquals(c.getParents(), parents);
+            assertEquals(c.getGeneration(), graph.generation(pos));
+            assertEquals(c.getTimestamp().getTime(), graph.timestamp(pos));
+        }
+        assertEquals(-1, graph.position(Utils.sha1("not a commit")));
+    }
+
+    @Test
+    public void recordsHoldTheShapeOfTheHistory() {
+        List<String> ids = new ArrayList<>();
+        Repository repo = repositoryWithMerge(ids);
+        /* appended by this instance, and read from the file by another */
+        checkRecords(repo.graph, ids);
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        checkRecords(reopened.graph, ids);
+        assertEquals(List.of(0, 1, 2, 2, 3, 4), ids.stream()
+                .map(id -> reopened.graph.generation(reopened.graph.position(id))).toList());
+
+        Commit last = Commit.readCommit(ids.get(5));
+        assertEquals(ids.get(4), last.getParentCommit(1).getID());
+        assertEquals(ids.get(1), last.getParentCommit(3).getID());
+        assertEquals(ids.get(0), last.getParentCommit(4).getID());
+
+        /* what another instance adds is seen once the table is forgotten */
+        repo.makeCurrent();
+        String next = commit(repo, "f.txt", "5", "next");
+        reopened.makeCurrent();
+        assertEquals(-1, reopened.graph.position(next));
+        reopened.graph.invalidate();
+        ids.add(next);
+        checkRecords(reopened.graph, ids);
+    }
+
+    @Test
+    public void tableIsRebuiltFromTheCommits() throws IOException {
+        List<String> ids = new ArrayList<>();
+        Repository repo = repositoryWithMerge(ids);
+        File file = Utils.join(repo.dir, "commitGraph");
+        assertTrue(file.delete());
+
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        checkRecords(reopened.graph, ids);
+        assertTrue(file.isFile());
+        assertEquals(ids.size(), reopened.graph.sortedSize());
+
+        /* a record cut short by a crash is left out */
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(out.length());
+            out.write(new byte[] {1, 2, 3, 4, 5});
+        }
+        Repository again = new Repository(repo.root);
+        again.makeCurrent();
+        checkRecords(again.graph, ids);
+    }
+
+    @Test
+    public void manyAppendedRecordsAreSortedAgain() {
+        Repository repo = UnitTest.scratchRepository();
+        File file = new File(UnitTest.scratchDirectory(), "graph");
+        CommitGraph graph = new CommitGraph(file);
+        String initial = repo.log().get(0).getID();
+        assertEquals(1, graph.size());
+        assertEquals(1, graph.sortedSize());
+
+        /* commits of a long line, each merging the one two before */
+        List<Commit> commits = new ArrayList<>();
+        String parent = initial;
+        String parent2 = null;
+        for (int i = 1; i <= 1500; i++) {
+            Commit c = new Commit("c" + i, new Date(i), parent, parent2, i, Tree.EMPTY.getID());
+            graph.add(c);
+            commits.add(c);
+            parent2 = i % 2 == 0 ? parent : null;
+            parent = c.getID();
+        }
+        assertEquals(1501, graph.size());
+        assertTrue(graph.sortedSize() > 1);
+        assertTrue(graph.sortedSize() < 1501);
+
+        for (CommitGraph g : List.of(graph, new CommitGraph(file))) {
+            assertEquals(1501, g.size());
+            for (Commit c : commits) {
+                int pos = g.position(c.getID());
+                assertEquals(c.getID(), g.id(pos));
+                assertEquals(c.getParent(), g.id(g.parent1(pos)));
+                assertEquals(c.getParent2() == null ? -1 : g.position(c.getParent2()),
+                        g.parent2(pos));
+                assertEquals(c.getGeneration(), g.generation(pos));
+                assertEquals(c.getTimestamp().getTime(), g.timestamp(pos));
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/** A table of all commit ids, one fixed width record per line, so an
+ *  abbreviated id can be resolved by binary search instead of listing
+ *  and scanning the commits directory.
+ *
+ *  Layout: "GCI1", the number of sorted records int, then the records.
+ *  The first records are sorted and found by binary search. New ids are
+ *  appended after them, so saving a commit writes one record, and the
+ *  few appended ones are scanned. Once there are too many of those the
+ *  whole table is written sorted to a new file that replaces it in one
+ *  rename, so a crash never leaves a table missing ids. Each lookup
+ *  opens the table once and searches it mapped, so it costs no read
+ *  per probe.
+ *  @author Tianyi Xu
+ */
+class CommitIndex {
+    private static final byte[] MAGIC = {'G', 'C', 'I', '1'};
+    private static final int HEADER = 8;
+    /* A full id followed by a newline */
+    private static final int RECORD = Utils.UID_LENGTH + 1;
+    /* Most appended records allowed before the table is rewritten sorted */
+    static final int MAX_UNSORTED = 1024;
+
+    /* The file holding the records */
+    private final File file;
+
+    CommitIndex(File file) {
+        this.file = file;
+    }
+
+    /** Return the ids starting with PREFIX in sorted order, but no more
+     *  than LIMIT of them. */
+    List<String> find(String prefix, int limit) {
+        if (prefix.length() > Utils.UID_LENGTH) {
+            return new ArrayList<>();
+        }
+        try (FileChannel table = open(StandardOpenOption.READ)) {
+            return find(map(table), prefix, limit);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Add the id COMMITID to the table. An id added twice is found
+     *  once, and kept once when the table is rewritten, so the table
+     *  isn't searched first. */
+    void add(String commitId) {
+        List<String> ids;
+        try (FileChannel table = open(StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            table.read(header, 0);
+            int sorted = header.getInt(MAGIC.length);
+            /* a record cut short by a crash is written over */
+            long n = (table.size() - HEADER) / RECORD;
+            if (n - sorted < MAX_UNSORTED) {
+                table.write(ByteBuffer.wrap((commitId + "\n").getBytes(StandardCharsets.US_ASCII)),
+                        HEADER + n * RECORD);
+                return;
+            }
+            ids = readAll(map(table));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ids.add(commitId);
+        rewrite(ids);
+    }
+
+    /** Open the table with OPTIONS, building it from the commit files
+     *  first if it doesn't exist yet, as in repositories created before
+     *  the index was introduced, or holds only sorted records without a
+     *  header, as older versions wrote it. */
+    private FileChannel open(StandardOpenOption... options) throws IOException {
+        if (file.isFile()) {
+            FileChannel table = FileChannel.open(file.toPath(), options);
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            if (table.read(header, 0) == HEADER
+                    && Arrays.equals(header.array(), 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+                return table;
+            }
+            table.close();
+        }
+        rewrite(new ArrayList<>(Repository.current().commits.ids()));
+        return FileChannel.open(file.toPath(), options);
+    }
+
+    /** Return the contents of TABLE, mapped. */
+    private static ByteBuffer map(FileChannel table) throws IOException {
+        return table.map(FileChannel.MapMode.READ_ONLY, 0, table.size());
+    }
+
+    /** Return the ids of RECORDS starting with PREFIX in sorted order,
+     *  but no more than LIMIT of them. */
+    private static List<String> find(ByteBuffer records, String prefix, int limit) {
+        TreeSet<String> found = new TreeSet<>();
+        int sorted = records.getInt(MAGIC.length);
+        for (int i = lowerBound(records, sorted, prefix);
+             i < sorted && found.size() < limit; i++) {
+            String id = readRecord(records, i);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            found.add(id);
+        }
+        for (String id : readUnsorted(records, sorted)) {
+            if (id.startsWith(prefix)) {
+                found.add(id);
+            }
+        }
+        List<String> result = new ArrayList<>(found);
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    /** Return every id in RECORDS. */
+    private static List<String> readAll(ByteBuffer records) {
+        int sorted = records.getInt(MAGIC.length);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < sorted; i++) {
+            ids.add(readRecord(records, i));
+        }
+        ids.addAll(readUnsorted(records, sorted));
+        return ids;
+    }
+
+    /** Replace the table by one holding IDS, sorted. */
+    private void rewrite(List<String> ids) {
+        String[] sorted = new TreeSet<>(ids).toArray(new String[0]);
+        ByteArrayOutputStream bytes = new Utils.Bytes(HEADER + sorted.length * RECORD);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(MAGIC);
+            out.writeInt(sorted.length);
+            for (String id : sorted) {
+                out.write((id + "\n").getBytes(StandardCharsets.US_ASCII));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeAtomically(file, (Object) bytes.toByteArray());
+    }
+
+    /** Return the whole records after the SORTED first ones of RECORDS. */
+    private static List<String> readUnsorted(ByteBuffer records, int sorted) {
+        int n = (records.capacity() - HEADER) / RECORD;
+        List<String> ids = new ArrayList<>();
+        for (int i = sorted; i < n; i++) {
+            ids.add(readRecord(records, i));
+        }
+        return ids;
+    }
+
+    /** Return the index of the first of the N sorted records of RECORDS
+     *  that is not less than KEY. */
+    private static int lowerBound(ByteBuffer records, int n, String key) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (readRecord(records, mid).compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static String readRecord(ByteBuffer records, int i) {
+        byte[] record = new byte[Utils.UID_LENGTH];
+        records.get(HEADER + i * RECORD, record);
+        return new String(record, StandardCharsets.US_ASCII);
+    }
+}
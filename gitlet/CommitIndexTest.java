@@ -0,0 +1,114 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** Tests of the resolution of abbreviated commit ids by the table of
+ *  commit ids.
+ *  @author Tianyi Xu
+ */
+public class CommitIndexTest {
+
+    /** Return a table of commit ids in a new repository, holding its
+     *  initial commit, whose id is put in INITIAL[0]. */
+    private static CommitIndex newIndex(String[] initial) {
+        Repository repo = UnitTest.scratchRepository();
+        initial[0] = repo.log().get(0).getID();
+        return new CommitIndex(Utils.join(repo.dir, "testIndex"));
+    }
+
+    /** Return N distinct random ids starting with PREFIX. */
+    private static List<String> ids(String prefix, int n, Random random) {
+        List<String> ids = new ArrayList<>();
+        while (ids.size() < n) {
+            StringBuilder id = new StringBuilder(prefix);
+            while (id.length() < Utils.UID_LENGTH) {
+                id.append(Character.forDigit(random.nextInt(16), 16));
+            }
+            if (!ids.contains(id.toString())) {
+                ids.add(id.toString());
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    public void uniqueAmbiguousAndMissingPrefixes() {
+        String[] initial = new String[1];
+        CommitIndex index = newIndex(initial);
+        index.add("abc1" + "0".repeat(36));
+        index.add("abc2" + "0".repeat(36));
+        index.add("abd0" + "0".repeat(36));
+
+        assertEquals(List.of("abd0" + "0".repeat(36)), index.find("abd", 2));
+        assertEquals(List.of("abc1" + "0".repeat(36), "abc2" + "0".repeat(36)),
+                index.find("abc", 2));
+        assertEquals(3, index.find("ab", 5).size());
+        assertEquals(List.of(), index.find("abe", 2));
+        assertEquals(List.of(), index.find("abc1" + "0".repeat(37), 2));
+        assertEquals(List.of(initial[0]), index.find(initial[0], 2));
+        assertEquals(List.of(initial[0]), index.find(initial[0].substring(0, 8), 2));
+    }
+
+    @Test
+    public void prefixesFoundOnBothSidesOfAMerge() {
+        String[] initial = new String[1];
+        CommitIndex index = newIndex(initial);
+        Random random = new Random(5);
+        List<String> ids = ids("", CommitIndex.MAX_UNSORTED + 10, random);
+        List<String> shared = ids("ffff", 4, random);
+        ids.set(0, shared.get(0));
+        ids.set(CommitIndex.MAX_UNSORTED + 5, shared.get(1));
+        for (String id : ids) {
+            index.add(id);
+        }
+        index.add(ids.get(7));
+        for (String id : ids) {
+            assertEquals(List.of(id), index.find(id, 2));
+            assertEquals(List.of(id), index.find(id.substring(0, 12), 2));
+        }
+        List<String> found = index.find("ffff", 2);
+        assertEquals(2, found.size());
+        assertTrue(found.containsAll(shared.subList(0, 2)));
+        assertEquals(List.of(initial[0]), index.find(initial[0], 2));
+        assertEquals(ids.size() + 1, index.find("", Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    public void recordCutShortIsIgnored() throws IOException {
+        String[] initial = new String[1];
+        CommitIndex index = newIndex(initial);
+        String id = "1234" + "0".repeat(36);
+        index.add(id);
+        File file = Utils.join(Repository.current().dir, "testIndex");
+        try (RandomAccessFile table = new RandomAccessFile(file, "rw")) {
+            table.seek(table.length());
+            table.writeBytes("5678");
+        }
+        assertEquals(List.of(id), index.find("1", 2));
+        assertEquals(List.of(), index.find("5", 2));
+        String next = "5678" + "0".repeat(36);
+        index.add(next);
+        assertEquals(List.of(next), index.find("5", 2));
+        assertEquals(List.of(id), index.find("1", 2));
+    }
+
+    @Test
+    public void tableOfAnOlderVersionIsRebuilt() {
+        String[] initial = new String[1];
+        CommitIndex index = newIndex(initial);
+        /* older versions wrote the sorted records alone */
+        Utils.writeContents(Utils.join(Repository.current().dir, "testIndex"),
+                "0123" + "0".repeat(36) + "\n");
+        assertEquals(List.of(initial[0]), index.find(initial[0].substring(0, 6), 2));
+        assertEquals(List.of(), index.find("0123", 2));
+    }
+}
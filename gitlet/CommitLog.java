@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/** An append-only log of the metadata of every commit, in the order the
+ *  commits were made, with a hash index of their messages. global-log
+ *  streams the log and find follows one hash chain, so neither opens a
+ *  commit.
+ *
+ *  The log holds fixed size records: id, first parent and second parent
+ *  (20 bytes each, zeros for none), timestamp long, offset of the message
+ *  long and the number of the previous record whose message falls in the
+ *  same hash bucket int (-1 for none). Messages are appended to a second
+ *  file as written by Utils.writeString. The index holds the number of
+ *  records linked into the chains, then the newest record of each bucket.
+ *  @author Tianyi Xu
+ */
+class CommitLog {
+    /** The metadata of one commit. */
+    static class Entry {
+        final String id;
+        final String parent;
+        final String parent2;
+        final Date timestamp;
+        final String message;
+
+        Entry(String id, String parent, String parent2, Date timestamp, String message) {
+            this.id = id;
+            this.parent = parent;
+            this.parent2 = parent2;
+            this.timestamp = timestamp;
+            this.message = message;
+        }
+    }
+
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    private static final int RECORD = 3 * ID_BYTES + 8 + 8 + 4;
+    private static final int BUCKETS = 1 << 16;
+    private static final byte[] NO_PARENT = new byte[ID_BYTES];
+
+    private final File log;
+    private final File messages;
+    private final File index;
+
+    CommitLog(File log, File messages, File index) {
+        this.log = log;
+        this.messages = messages;
+        this.index = index;
+    }
+
+    /** Append the newly saved commit C. */
+    synchronized void add(Commit c) {
+        if (build()) {
+            /* rebuilt just now from the commits, which already hold C */
+            return;
+        }
+        try (RandomAccessFile logFile = new RandomAccessFile(log, "rw");
+             RandomAccessFile messageFile = new RandomAccessFile(messages, "rw");
+             RandomAccessFile indexFile = new RandomAccessFile(index, "rw")) {
+            linkAll(logFile, messageFile, indexFile);
+            append(logFile, messageFile, indexFile, c.getID(), c.getParent(),
+                    c.getParent2(), c.getTimestamp(), c.getMessage());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the ids of the commits whose message is MESSAGE, newest first. */
+    synchronized List<String> find(String message) {
+        ensureExists();
+        List<String> ids = new ArrayList<>();
+        try (RandomAccessFile logFile = new RandomAccessFile(log, "r");
+             RandomAccessFile messageFile = new RandomAccessFile(messages, "r");
+             RandomAccessFile indexFile = new RandomAccessFile(index, "r")) {
+            indexFile.seek(4 + 4L * bucket(message));
+            byte[] id = new byte[ID_BYTES];
+            for (int i = indexFile.readInt(); i >= 0; ) {
+                logFile.seek((long) i * RECORD);
+                logFile.readFully(id);
+                logFile.skipBytes(2 * ID_BYTES + 8);
+                long offset = logFile.readLong();
+                int next = logFile.readInt();
+                messageFile.seek(offset);
+                if (message.equals(readMessage(messageFile))) {
+                    ids.add(Utils.toHex(id));
+                }
+                i = next;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return ids;
+    }
+
+    /** Pass every commit to ACTION, oldest first, reading the log and the
+     *  messages front to back. */
+    synchronized void forEach(Consumer<Entry> action) {
+        ensureExists();
+        try (DataInputStream logIn = open(log);
+             DataInputStream messageIn = open(messages)) {
+            long records = log.length() / RECORD;
+            long position = 0;
+            byte[] id = new byte[ID_BYTES];
+            byte[] parent = new byte[ID_BYTES];
+            byte[] parent2 = new byte[ID_BYTES];
+            for (long i = 0; i < records; i++) {
+                logIn.readFully(id);
+                logIn.readFully(parent);
+                logIn.readFully(parent2);
+                long timestamp = logIn.readLong();
+                long offset = logIn.readLong();
+                logIn.readInt();
+                /* skip a message whose record was lost in a crash */
+                while (position < offset) {
+                    position += messageIn.skipBytes((int) (offset - position));
+                }
+                int length = messageIn.readInt();
+                byte[] message = new byte[length];
+                messageIn.readFully(message);
+                position += 4 + length;
+                action.accept(new Entry(Utils.toHex(id), toId(parent), toId(parent2),
+                        new Date(timestamp), new String(message, StandardCharsets.UTF_8)));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Append a commit to the log, whose files are open as LOGFILE,
+     *  MESSAGEFILE and INDEXFILE, and whose records are all linked. The
+     *  message and the record are each written at once, the record
+     *  already pointing to the previous one of its bucket. */
+    private static void append(RandomAccessFile logFile, RandomAccessFile messageFile,
+                               RandomAccessFile indexFile, String id, String parent,
+                               String parent2, Date timestamp, String message)
+            throws IOException {
+        long offset = messageFile.length();
+        byte[] encoded = message.getBytes(StandardCharsets.UTF_8);
+        messageFile.seek(offset);
+        messageFile.write(ByteBuffer.allocate(4 + encoded.length)
+                .putInt(encoded.length).put(encoded).array());
+
+        int i = (int) (logFile.length() / RECORD);
+        long head = 4 + 4L * bucket(message);
+        indexFile.seek(head);
+        int previous = indexFile.readInt();
+        logFile.seek((long) i * RECORD);
+        logFile.write(ByteBuffer.allocate(RECORD)
+                .put(Utils.fromHex(id))
+                .put(parent == null ? NO_PARENT : Utils.fromHex(parent))
+                .put(parent2 == null ? NO_PARENT : Utils.fromHex(parent2))
+                .putLong(timestamp.getTime()).putLong(offset).putInt(previous).array());
+        link(indexFile, head, i);
+    }
+
+    /** Make record I, whose bucket starts at HEAD in INDEXFILE and which
+     *  already points to the previous newest, the newest of its bucket. */
+    private static void link(RandomAccessFile indexFile, long head, int i)
+            throws IOException {
+        indexFile.seek(head);
+        indexFile.writeInt(i);
+        indexFile.seek(0);
+        indexFile.writeInt(i + 1);
+    }
+
+    /** Link the records of LOGFILE that a crash left out of INDEXFILE. */
+    private static void linkAll(RandomAccessFile logFile, RandomAccessFile messageFile,
+                                RandomAccessFile indexFile) throws IOException {
+        int records = (int) (logFile.length() / RECORD);
+        indexFile.seek(0);
+        for (int i = indexFile.readInt(); i < records; i++) {
+            logFile.seek((long) i * RECORD + RECORD - 12);
+            messageFile.seek(logFile.readLong());
+            long head = 4 + 4L * bucket(readMessage(messageFile));
+            indexFile.seek(head);
+            int previous = indexFile.readInt();
+            /* the crash may have come after the bucket was moved to the
+             * record, which then already points to the previous newest */
+            if (previous != i) {
+                logFile.seek((long) i * RECORD + RECORD - 4);
+                logFile.writeInt(previous);
+            }
+            link(indexFile, head, i);
+        }
+    }
+
+    /** Build the log and the index from the commits if there are none,
+     *  as in repositories created before they were introduced, and link
+     *  records that a crash left out of the index. */
+    private void ensureExists() {
+        if (build()) {
+            return;
+        }
+        try (RandomAccessFile logFile = new RandomAccessFile(log, "rw");
+             RandomAccessFile messageFile = new RandomAccessFile(messages, "r");
+             RandomAccessFile indexFile = new RandomAccessFile(index, "rw")) {
+            linkAll(logFile, messageFile, indexFile);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Build the log and the index from the commits if there are none,
+     *  and return true if they were built. */
+    private boolean build() {
+        if (!log.isFile() || !messages.isFile() || !index.isFile()) {
+            log.delete();
+            messages.delete();
+            byte[] empty = new byte[4 + 4 * BUCKETS];
+            Arrays.fill(empty, 4, empty.length, (byte) 0xff);
+            Utils.writeContents(index, (Object) empty);
+            Utils.writeContents(log, (Object) new byte[0]);
+            Utils.writeContents(messages, (Object) new byte[0]);
+            List<Commit> commits = new ArrayList<>();
+            for (String commitId : Repository.current().commits.ids()) {
+                commits.add(Commit.readCommit(commitId));
+            }
+            commits.sort(Comparator.comparing(Commit::getTimestamp)
+                    .thenComparingInt(Commit::getGeneration));
+            try (RandomAccessFile logFile = new RandomAccessFile(log, "rw");
+                 RandomAccessFile messageFile = new RandomAccessFile(messages, "rw");
+                 RandomAccessFile indexFile = new RandomAccessFile(index, "rw")) {
+                for (Commit c : commits) {
+                    append(logFile, messageFile, indexFile, c.getID(), c.getParent(),
+                            c.getParent2(), c.getTimestamp(), c.getMessage());
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static int bucket(String message) {
+        return message.hashCode() & (BUCKETS - 1);
+    }
+
+    private static String readMessage(DataInput in) throws IOException {
+        byte[] encoded = new byte[in.readInt()];
+        in.readFully(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    private static DataInputStream open(File file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())));
+    }
+
+    private static String toId(byte[] raw) {
+        return Arrays.equals(raw, NO_PARENT) ? null : Utils.toHex(raw);
+    }
+}
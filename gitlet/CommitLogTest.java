@@ -0,0 +1,125 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests of global-log and find as answered by the log of commits.
+ *  @author Tianyi Xu
+ */
+public class CommitLogTest {
+
+    /** Commit CONTENTS as FILENAME in REPO with MESSAGE, and return the
+     *  commit id. */
+    private static String commit(Repository repo, String fileName, String contents,
+                                 String message) {
+        Utils.writeContents(new File(repo.root, fileName), contents);
+        repo.add(fileName);
+        return repo.commit(message);
+    }
+
+    /** Return the log entries of the commits IDS of REPO, as log shows them. */
+    private static List<String> entries(Repository repo, List<String> ids) {
+        List<String> entries = new ArrayList<>();
+        for (String id : ids) {
+            entries.add(repo.bind(() -> Commit.readCommit(id).toString()));
+        }
+        return entries;
+    }
+
+    /** Return a repository with commits "same", "other", "same" on master,
+     *  "side" on branch side and a merge of side, whose ids, initial
+     *  commit first, are put in IDS. "Aa" and "BB" share a hash bucket. */
+    private static Repository repositoryWithHistory(List<String> ids) {
+        Repository repo = UnitTest.scratchRepository();
+        ids.add(repo.log().get(0).getID());
+        ids.add(commit(repo, "f.txt", "1", "same"));
+        repo.branch("side");
+        ids.add(commit(repo, "f.txt", "2", "other"));
+        ids.add(commit(repo, "f.txt", "3", "same"));
+        repo.checkout("side");
+        ids.add(commit(repo, "g.txt", "4", "side"));
+        repo.checkout("master");
+        repo.merge("side");
+        ids.add(repo.log().get(0).getID());
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        ids.add(commit(repo, "f.txt", "5", "Aa"));
+        return repo;
+    }
+
+    @Test
+    public void findAndGlobalLog() {
+        List<String> ids = new ArrayList<>();
+        Repository repo = repositoryWithHistory(ids);
+
+        assertEquals(List.of(ids.get(3), ids.get(1)), repo.find("same"));
+        assertEquals(List.of(ids.get(4)), repo.find("side"));
+        assertEquals(List.of(ids.get(6)), repo.find("Aa"));
+        assertEquals(List.of(), repo.find("BB"));
+        assertEquals(List.of(), repo.find("missing"));
+        assertEquals(entries(repo, ids), repo.globalLog());
+        assertTrue(repo.globalLog().get(5).contains("Merge: "));
+    }
+
+    @Test
+    public void neitherReadsTheCommits() {
+        List<String> ids = new ArrayList<>();
+        Repository repo = repositoryWithHistory(ids);
+        List<String> expected = entries(repo, ids);
+
+        /* only the head commit is left, which reading the state needs */
+        for (String id : ids.subList(0, ids.size() - 1)) {
+            assertTrue(repo.commits.file(id).delete());
+        }
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        assertEquals(expected, reopened.globalLog());
+        assertEquals(List.of(ids.get(3), ids.get(1)), reopened.find("same"));
+    }
+
+    @Test
+    public void logIsBuiltFromTheCommits() {
+        List<String> ids = new ArrayList<>();
+        Repository repo = repositoryWithHistory(ids);
+        List<String> expected = entries(repo, ids);
+        for (String name : List.of("commitLog", "commitMessages")) {
+            assertTrue(Utils.join(repo.dir, name).delete());
+        }
+
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        /* in the order of their timestamps, which may tie within a millisecond */
+        List<String> rebuilt = new ArrayList<>(reopened.globalLog());
+        Collections.sort(rebuilt);
+        Collections.sort(expected);
+        assertEquals(expected, rebuilt);
+        assertEquals(List.of(ids.get(3), ids.get(1)), reopened.find("same"));
+        String next = commit(reopened, "f.txt", "6", "same");
+        assertEquals(List.of(next, ids.get(3), ids.get(1)), reopened.find("same"));
+    }
+
+    @Test
+    public void recordLeftOutOfTheIndexByACrashIsLinked() throws IOException {
+        List<String> ids = new ArrayList<>();
+        Repository repo = repositoryWithHistory(ids);
+        /* as a crash after the record was written but before the index
+         * linked it leaves the index */
+        try (RandomAccessFile index = new RandomAccessFile(
+                Utils.join(repo.dir, "messageIndex"), "rw")) {
+            assertEquals(ids.size(), index.readInt());
+            index.seek(0);
+            index.writeInt(ids.size() - 1);
+        }
+        assertEquals(List.of(ids.get(6)), repo.find("Aa"));
+        String next = commit(repo, "f.txt", "6", "Aa");
+        assertEquals(List.of(next, ids.get(6)), repo.find("Aa"));
+        assertEquals(ids.size() + 1, repo.globalLog().size());
+    }
+}
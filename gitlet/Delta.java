@@ -0,0 +1,136 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Copy/insert deltas between byte arrays, used to store an object of
+ *  a pack as the difference from a similar object.  A delta is the
+ *  lengths of the base and the result followed by a list of
+ *  instructions, each either copying a range of the base or inserting
+ *  literal bytes.
+ *  @author Tianyi Xu
+ */
+class Delta {
+    /* Size of the base blocks indexed when looking for matches */
+    private static final int BLOCK = 16;
+    private static final int INSERT = 0;
+    private static final int COPY = 1;
+
+    /** Return a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        /* Offset of the first occurrence of each aligned block of the base */
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+
+        int inserted = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer off = blocks.get(hash(target, i));
+            if (off == null || !matches(base, off, target, i)) {
+                i++;
+                continue;
+            }
+            int start = off;
+            int len = BLOCK;
+            while (start + len < base.length && i + len < target.length
+                    && base[start + len] == target[i + len]) {
+                len++;
+            }
+            while (i > inserted && start > 0 && base[start - 1] == target[i - 1]) {
+                i--;
+                start--;
+                len++;
+            }
+            insert(out, target, inserted, i);
+            out.write(COPY);
+            writeVarint(out, start);
+            writeVarint(out, len);
+            i += len;
+            inserted = i;
+        }
+        insert(out, target, inserted, target.length);
+        return out.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw Utils.error("Delta does not match its base.");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int n = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++];
+            if (op == COPY) {
+                int start = readVarint(delta, pos);
+                int len = readVarint(delta, pos);
+                System.arraycopy(base, start, result, n, len);
+                n += len;
+            } else {
+                int len = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, n, len);
+                pos[0] += len;
+                n += len;
+            }
+        }
+        if (n != result.length) {
+            throw Utils.error("Corrupted delta.");
+        }
+        return result;
+    }
+
+    /** Write an instruction inserting TARGET[FROM..TO), if not empty. */
+    private static void insert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    private static boolean matches(byte[] base, int off, byte[] target, int i) {
+        for (int k = 0; k < BLOCK; k++) {
+            if (base[off + k] != target[i + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] b, int off) {
+        int h = 1;
+        for (int k = off; k < off + BLOCK; k++) {
+            h = 31 * h + b[k];
+        }
+        return h;
+    }
+
+    /** Write the non-negative N to OUT, seven bits per byte. */
+    private static void writeVarint(ByteArrayOutputStream out, int n) {
+        while ((n & ~0x7f) != 0) {
+            out.write((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write(n);
+    }
+
+    /** Read a number written by writeVarint from B at POS[0], advancing it. */
+    private static int readVarint(byte[] b, int[] pos) {
+        int n = 0;
+        for (int shift = 0; ; shift += 7) {
+            int x = b[pos[0]++];
+            n |= (x & 0x7f) << shift;
+            if ((x & 0x80) == 0) {
+                return n;
+            }
+        }
+    }
+}
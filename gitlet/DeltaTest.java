@@ -0,0 +1,80 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** Tests that the deltas of packed objects rebuild their targets.
+ *  @author Tianyi Xu
+ */
+public class DeltaTest {
+
+    @Test
+    public void similarContentsRoundTrip() {
+        Random random = new Random(61);
+        for (int round = 0; round < 200; round++) {
+            byte[] base = new byte[random.nextInt(4000)];
+            random.nextBytes(base);
+            byte[] target = edit(base, random);
+            byte[] delta = Delta.create(base, target);
+            assertArrayEquals(target, Delta.apply(base, delta));
+        }
+    }
+
+    @Test
+    public void unrelatedAndEmptyContentsRoundTrip() {
+        Random random = new Random(7);
+        byte[] empty = new byte[0];
+        byte[] some = new byte[100];
+        random.nextBytes(some);
+        byte[] other = new byte[150];
+        random.nextBytes(other);
+        for (byte[][] pair : new byte[][][] {{empty, empty}, {empty, some}, {some, empty},
+                                            {some, other}, {some, some}}) {
+            assertArrayEquals(pair[1], Delta.apply(pair[0], Delta.create(pair[0], pair[1])));
+        }
+    }
+
+    @Test
+    public void smallChangeGivesSmallDelta() {
+        byte[] base = new byte[64 * 1024];
+        new Random(3).nextBytes(base);
+        byte[] target = base.clone();
+        target[target.length / 2] ^= 1;
+        assertTrue(Delta.create(base, target).length < 200);
+    }
+
+    @Test
+    public void wrongBaseIsRejected() {
+        byte[] base = "some base contents".getBytes();
+        byte[] delta = Delta.create(base, "some target contents".getBytes());
+        try {
+            Delta.apply(Arrays.copyOf(base, base.length - 1), delta);
+            fail("applied a delta to the wrong base");
+        } catch (GitletException excp) {
+            assertEquals("Delta does not match its base.", excp.getMessage());
+        }
+    }
+
+    /** Return BASE with a few random runs of bytes inserted, deleted and
+     *  replaced, using RANDOM. */
+    private static byte[] edit(byte[] base, Random random) {
+        byte[] result = base.clone();
+        for (int k = random.nextInt(5); k >= 0; k--) {
+            int at = random.nextInt(result.length + 1);
+            int len = random.nextInt(100);
+            byte[] run = new byte[len];
+            random.nextBytes(run);
+            int cut = Math.min(result.length - at, random.nextInt(3) == 0 ? len : 0);
+            byte[] next = new byte[result.length - cut + len];
+            System.arraycopy(result, 0, next, 0, at);
+            System.arraycopy(run, 0, next, at, len);
+            System.arraycopy(result, at + cut, next, at + len, result.length - at - cut);
+            result = next;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,74 @@
+package gitlet;
+
+import java.util.Arrays;
+
+/** Run-length compression of bitmaps in the manner of EWAH. The bitmap
+ *  is cut in 64-bit words and encoded as a sequence of markers, each
+ *  followed by literal words. A marker holds the value of a run of clean
+ *  words, all zeros or all ones, in bit 0, the length of that run in
+ *  bits 1-32 and the number of literal words after the run in bits 33-63.
+ *  @author Tianyi Xu
+ */
+class Ewah {
+    private static final long MAX_RUN = (1L << 32) - 1;
+    private static final long MAX_LITERALS = (1L << 31) - 1;
+
+    /** Return the compressed form of the bitmap WORDS. */
+    static long[] compress(long[] words) {
+        long[] out = new long[words.length + words.length / 2 + 2];
+        int n = 0;
+        int i = 0;
+        while (i < words.length) {
+            long clean = words[i] == -1L ? 1 : 0;
+            long run = 0;
+            while (i < words.length && run < MAX_RUN && isClean(words[i], clean)) {
+                run++;
+                i++;
+            }
+            int marker = n++;
+            long literals = 0;
+            while (i < words.length && literals < MAX_LITERALS
+                    && words[i] != 0 && words[i] != -1L) {
+                out = ensure(out, n);
+                out[n++] = words[i++];
+                literals++;
+            }
+            out = ensure(out, marker);
+            out[marker] = clean | run << 1 | literals << 33;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Return the bitmap compressed in ENCODED. */
+    static long[] decompress(long[] encoded) {
+        int size = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            long literals = encoded[i] >>> 33;
+            size += (int) ((encoded[i] >>> 1) & MAX_RUN) + (int) literals;
+            i += (int) literals;
+        }
+        long[] words = new long[size];
+        int w = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            long marker = encoded[i];
+            int run = (int) ((marker >>> 1) & MAX_RUN);
+            if ((marker & 1) != 0) {
+                Arrays.fill(words, w, w + run, -1L);
+            }
+            w += run;
+            int literals = (int) (marker >>> 33);
+            System.arraycopy(encoded, i + 1, words, w, literals);
+            w += literals;
+            i += literals;
+        }
+        return words;
+    }
+
+    private static boolean isClean(long word, long value) {
+        return value == 0 ? word == 0 : word == -1L;
+    }
+
+    private static long[] ensure(long[] out, int index) {
+        return index < out.length ? out : Arrays.copyOf(out, out.length * 2);
+    }
+}
@@ -0,0 +1,49 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** Tests that compressed bitmaps decompress to what was compressed.
+ *  @author Tianyi Xu
+ */
+public class EwahTest {
+
+    @Test
+    public void randomBitmapsRoundTrip() {
+        Random random = new Random(61);
+        for (int round = 0; round < 500; round++) {
+            long[] words = new long[random.nextInt(300)];
+            int w = 0;
+            while (w < words.length) {
+                /* runs of clean words between runs of literal ones */
+                int run = Math.min(words.length - w, 1 + random.nextInt(40));
+                int kind = random.nextInt(3);
+                for (int i = 0; i < run; i++, w++) {
+                    words[w] = kind == 0 ? 0 : kind == 1 ? -1L : random.nextLong();
+                }
+            }
+            assertWordsEqual(words, Ewah.decompress(Ewah.compress(words)));
+        }
+    }
+
+    @Test
+    public void cleanRunsCompressToOneWord() {
+        long[] ones = new long[10000];
+        Arrays.fill(ones, -1L);
+        assertEquals(1, Ewah.compress(ones).length);
+        assertEquals(1, Ewah.compress(new long[10000]).length);
+        assertEquals(0, Ewah.decompress(Ewah.compress(new long[0])).length);
+    }
+
+    /** Check that ACTUAL equals EXPECTED, word by word. */
+    private static void assertWordsEqual(long[] expected, long[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("word " + i, expected[i], actual[i]);
+        }
+    }
+}
@@ -4,8 +4,17 @@ package gitlet;
 import com.sun.source.util.Trees;
 import jdk.jshell.execution.Util;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.spi.BreakIteratorProvider;
 import java.util.*;
 
@@ -17,20 +26,18 @@ import java.util.*;
 
 
 public class GTTree implements Serializable {
-    // Get the current working directory
-    static final File CWD = new File(System.getProperty("user.dir"));
-    static final File REPO_DIR = Utils.join(CWD, ".gitlet");
-    static final File COMMITS_DIR = Utils.join(REPO_DIR, "commits");
-    static final File BLOBS_DIR = Utils.join(REPO_DIR, "blobs");
-    static final File GIT_TREE = Utils.join(REPO_DIR, "gitTree");
+    /* that of the states saved with Java serialization by the first
+     * versions with a stat cache, still read; those of the original
+     * gitlet are told apart and read by LegacyFormat */
+    private static final long serialVersionUID = 206428094665116770L;
 
     /* Pointer point to the most recent commit */
     private Commit _HEAD;
     // Name of the branch
     private String currentBranch;
 
-    /* Map the file name to its contents sha1 */
-    Map<String, byte[]> stagedFiles;
+    /* Map the file name to the index entry of its staged blob */
+    Map<String, IndexEntry> stagedFiles;
 
     /* Staged files for removing, file are from the most recent commmit*/
     Set<String> stagedrmFiles;
@@ -38,19 +45,45 @@ public class GTTree implements Serializable {
     /* Map the branch name to the sha1 of its most recent commit */
     Map<String, String> branches;
 
+    /* Stat cache: map the name of a working file to its sha1 and the
+     * stat data it had when it was last hashed */
+    Map<String, IndexEntry> index;
+
+    /* The state as it was last read or saved, so that saveTree writes
+     * only what changed; null for a state never saved in its files */
+    private transient String savedBranch;
+    private transient Map<String, String> savedBranches;
+    private transient byte[] savedIndex;
+
+    /* Bumped by every save that writes anything, and saved in the index,
+     * so that an instance tells whether another one saved since */
+    private transient long generation;
+
+    /* Set by the commands that rewrite objects other instances may have
+     * read, so that the next save bumps the generation */
+    private transient boolean objectsRewritten;
+
+    /** Return the repository the state belongs to, that of the
+     *  operation running on this thread. */
+    private static Repository repo() {
+        return Repository.current();
+    }
 
     public GTTree() {
         // initialize with treemap to keep string in lexicographic orders
         stagedFiles = new TreeMap<>();
         stagedrmFiles = new TreeSet<>();
         branches = new TreeMap<>();
+        index = new TreeMap<>();
     }
 
     void init() {
-        REPO_DIR.mkdir();
-        COMMITS_DIR.mkdir();
-        BLOBS_DIR.mkdir();
-        Commit initial = new Commit("initial commit", null, new HashMap<>());
+        repo().dir.mkdirs();
+        repo().commitsDir.mkdir();
+        repo().blobsDir.mkdir();
+        repo().treesDir.mkdir();
+        repo().refsDir.mkdir();
+        Commit initial = new Commit("initial commit", null, Tree.EMPTY.getID());
         initial.saveCommit();
         branches.put("master", initial.getID());
         _HEAD = initial;
@@ -58,21 +91,35 @@ public class GTTree implements Serializable {
     }
 
 
-    void add(String fileName) {
-        File file = Utils.join(CWD, fileName);
+    /** Add the files FILENAMES in order. The files are hashed and their
+     *  blobs written in parallel before any of them is staged. */
+    void add(List<String> fileNames) {
+        List<String> existing = new ArrayList<>();
+        for (String fileName : fileNames) {
+            if (Utils.join(repo().root, fileName).isFile()) {
+                existing.add(fileName);
+            }
+        }
+        Map<String, IndexEntry> hashed = hashWorkingFiles(existing, true);
+        for (String fileName : fileNames) {
+            add(fileName, hashed.get(fileName));
+        }
+    }
+
+    /** Add the file FILENAME whose contents are already hashed and stored
+     *  as ENTRY, which is null if the file does not exist. */
+    private void add(String fileName, IndexEntry entry) {
         if (stagedrmFiles.contains(fileName)) {
             stagedrmFiles.remove(fileName);
             return;
         }
 
 
-        if (!file.exists()) {
-            Utils.message("File does not exist.");
-            System.exit(0);
+        if (entry == null) {
+            throw Utils.error("File does not exist.");
         }
 
-        byte[] content = Utils.readContents(file);
-        String sha1 = Utils.sha1(content);
+        String sha1 = entry.getSha1();
 
         // Compare the file with the file in the  previous commit,
         //don't add to stage if the file hasn't modified
@@ -84,65 +131,164 @@ public class GTTree implements Serializable {
             }
         }
 
-        stagedFiles.put(fileName, content);
+        stagedFiles.put(fileName, entry);
         stagedrmFiles.remove(fileName);
     }
 
+    /** Write CONTENT of the file FILENAME to the blob store once,
+     *  and record only its blob id in the staging area. */
+    private void stage(String fileName, byte[] content) {
+        String sha1 = Utils.sha1(content);
+        repo().blobs.write(sha1, content);
+        IndexEntry entry = new IndexEntry(sha1, Utils.join(repo().root, fileName));
+        stagedFiles.put(fileName, entry);
+        index.put(fileName, entry);
+    }
+
+    /** Return the index entries of the working files FILENAMES. A file is
+     *  only hashed if its stat data changed since it was last hashed, the
+     *  files are hashed in parallel and straight from disk. If STORE, also
+     *  write the blobs of the files that are missing from the blob store.
+     *  No file is read into memory whole. */
+    private Map<String, IndexEntry> hashWorkingFiles(Collection<String> fileNames,
+                                                     boolean store) {
+        List<String> names = new ArrayList<>(fileNames);
+        List<IndexEntry> entries = Workers.map(names, fileName -> {
+            File file = Utils.join(repo().root, fileName);
+            IndexEntry cached = index.get(fileName);
+            if (cached != null && cached.isUpToDate(file)
+                    && (!store || repo().blobs.contains(cached.getSha1()))) {
+                return cached;
+            }
+            IndexEntry stat = IndexEntry.stat(file);
+            String sha1 = store ? repo().blobs.writeFile(file) : Utils.sha1(file);
+            return stat.withSha1(sha1);
+        });
+
+        Map<String, IndexEntry> result = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            index.put(names.get(i), entries.get(i));
+            result.put(names.get(i), entries.get(i));
+        }
+        return result;
+    }
+
+    /** Return the paths of all the plain files under the working directory
+     *  except the repository itself, relative to it and '/' separated,
+     *  in sorted order. */
+    private static List<String> workingFiles() {
+        List<String> files = new ArrayList<>();
+        listFiles(repo().root, "", files);
+        Collections.sort(files);
+        return files;
+    }
+
+    private static void listFiles(File dir, String prefix, List<String> files) {
+        for (String name : Utils.plainFilenamesIn(dir)) {
+            files.add(prefix + name);
+        }
+        for (String name : Utils.directoriesIn(dir)) {
+            if (!(prefix.isEmpty() && name.equals(repo().dir.getName()))) {
+                listFiles(Utils.join(dir, name), prefix + name + "/", files);
+            }
+        }
+    }
+
+    /** Delete the working file FILENAME, along with the directories that
+     *  it leaves empty. */
+    private void deleteWorkingFile(String fileName) {
+        if (!repo().dir.isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working directory");
+        }
+        File file = Utils.join(repo().root, fileName);
+        if (!file.isDirectory()) {
+            file.delete();
+        }
+        index.remove(fileName);
+        for (File dir = file.getParentFile(); dir != null && !dir.equals(repo().root);
+             dir = dir.getParentFile()) {
+            if (!dir.delete()) {
+                break;
+            }
+        }
+    }
+
+    /** Write the blob BLOBSHA1 to the working file FILENAME. */
+    private void writeWorkingFile(String fileName, String blobSha1) {
+        writeWorkingFiles(Collections.singletonMap(fileName, blobSha1));
+    }
+
+    /** Write each blob of FILES, file name -> blob sha1, to its working
+     *  file in parallel, and remember that the files now hold those blobs. */
+    private void writeWorkingFiles(Map<String, String> files) {
+        List<String> names = new ArrayList<>(files.keySet());
+        List<IndexEntry> entries = Workers.map(names, fileName -> {
+            File file = Utils.join(repo().root, fileName);
+            String blobSha1 = files.get(fileName);
+            file.getParentFile().mkdirs();
+            repo().blobs.copyTo(blobSha1, file);
+            return new IndexEntry(blobSha1, file);
+        });
+        for (int i = 0; i < names.size(); i++) {
+            index.put(names.get(i), entries.get(i));
+        }
+    }
+
     /**
-     * create a new commit
+     * create a new commit, and return its id
      * */
-    void commit(String message) {
+    String commit(String message) {
+        return commit(message, null);
+    }
+
+    /** Create a new commit whose second parent is PARENT2, which is
+     *  null unless the commit comes from a merge, and return its id. */
+    private String commit(String message, String parent2) {
 //        if (!branches.get(currentBranch).equals(_HEAD.getID())) {
 //            throw Utils.error("HEAD pointer departures from the current branch" +
 //                    "can't commit", currentBranch);
 //        }
         if (stagedFiles.isEmpty() && stagedrmFiles.isEmpty()) {
-            Utils.message("No changes added to the commit.");
-            System.exit(0);
+            throw Utils.error("No changes added to the commit.");
         }
 
-        Map<String, String> headBlobs = _HEAD.getBlobs();
-        Map<String, String> toCommit = new HashMap<>();
-
-        /* Copy the commit head pointed to */
-//        Map<String, String> toCommit = Map.copyOf(headBlobs); // immutable copy
-        for (String fileName : headBlobs.keySet()) {
-                toCommit.put(fileName, headBlobs.get(fileName));
-        }
-
-        /* Use the staged file to modify the blobs, also clear the staging area */
+        /* The staged changes: file path -> new blob, or null to remove it.
+         * The blobs were already written by add, so only the references change */
+        Map<String, String> changes = new TreeMap<>();
         for (String fileName : stagedFiles.keySet()) {
-            byte[] content = stagedFiles.get(fileName);
-            String sha1 = Utils.sha1(content);
-            toCommit.put(fileName, sha1);
-            /* Write the blob to file */
-            Utils.writeContents(Utils.join(BLOBS_DIR, sha1), content);
+            changes.put(fileName, stagedFiles.get(fileName).getSha1());
         }
 
         for (String fileName : stagedrmFiles) {
-            toCommit.remove(fileName);
+            changes.put(fileName, null);
         }
 
+        /* Only the trees of the directories on the changed paths are new */
+        String tree = Tree.update(_HEAD.getTree(), changes);
+
         stagedFiles.clear();
         stagedrmFiles.clear();
 
         String parentSha1 = _HEAD.getID();
-        Commit newCommit = new Commit(message, parentSha1, toCommit);
+        Commit newCommit = new Commit(message, parentSha1, parent2, tree);
         newCommit.saveCommit();
 
         /* Move the head and the current branch to the new commit */
         _HEAD = newCommit;
         branches.put(currentBranch, newCommit.getID());
+        repo().bitmaps.update(branches.values());
+        return newCommit.getID();
     }
 
 
+    /** Return the full id of the commit whose id starts with PREFIX,
+     *  or null if there is none. Throw if PREFIX matches several commits. */
     private String getCommit(String prefix) {
-        for (String commit : Utils.plainFilenamesIn(COMMITS_DIR)) {
-            if (commit.substring(0, prefix.length()).equals(prefix)) {
-                return commit;
-            }
+        List<String> matches = repo().commitIndex.find(prefix, 2);
+        if (matches.size() > 1) {
+            throw Utils.error("Commit id %s is ambiguous.", prefix);
         }
-        return null;
+        return matches.isEmpty() ? null : matches.get(0);
     }
 
 
@@ -154,85 +300,125 @@ public class GTTree implements Serializable {
     void checkOut(String fileName, String commitPrefix) {
         String commitSha1 = getCommit(commitPrefix);
         if (commitSha1 == null) {
-            System.out.println("No commit with that id exists.");
-            return;
+            throw Utils.error("No commit with that id exists.");
         }
         Commit commit = Commit.readCommit(commitSha1);
         String blobSha1 = commit.getBlobs().get(fileName);
         if (blobSha1 == null) {
-            System.out.println("File does not exist in that commit.");
-            return;
+            throw Utils.error("File does not exist in that commit.");
         }
 
-        File blobFile = Utils.join(BLOBS_DIR, blobSha1);
-        byte[] oldContent = Utils.readContents(blobFile);
-        File curFile = new File(fileName);
-        Utils.writeContents(curFile, oldContent);
+        writeWorkingFile(fileName, blobSha1);
     }
 
 
 
     void checkOutBranch(String branchName) {
         if (branchName.equals(currentBranch)) {
-            System.out.println("No need to checkout the current branch.");
-            return;
+            throw Utils.error("No need to checkout the current branch.");
         }
 
         String commitId = branches.get(branchName);
         if (commitId == null) {
-            System.out.println("No such branch exists.");
-            return;
+            throw Utils.error("No such branch exists.");
         }
 
-        checkOutCommit(commitId);
+        checkOutCommit(commitId, false);
         // the given branch will now be considered the current branch (HEAD).
         currentBranch = branchName;
     }
 
-    private void checkOutCommit(String commitPrefix) {
+    /** Check out the commit whose id starts with COMMITPREFIX and return
+     *  its full id. Only the files
+     *  that differ between the head and that commit are written or
+     *  deleted, and only they are checked for untracked files in the way.
+     *  If ALLTRACKED, also write back every other file of the commit that
+     *  was edited or deleted in the working directory. */
+    private String checkOutCommit(String commitPrefix, boolean allTracked) {
         String commitId = getCommit(commitPrefix);
 
         if (commitId == null) {
-            System.out.println("No commit with that id exists.");
-            return;
+            throw Utils.error("No commit with that id exists.");
         }
 
         Commit commit = Commit.readCommit(commitId);
-
-
-        /* if the untracked file will be overwritten by the checkout */
-        Set<String> untracked = findUntrackedFiles();
-        Map<String, String> givenBlobs = commit.getBlobs();
-        Map<String, String> curBlobs = _HEAD.getBlobs();
-
-        /* as a file could be tracked in the provided commit, but untracked in the current commit. */
-        for (String fileName : untracked) {
-            if (givenBlobs.containsKey(fileName) &&
-                    (!curBlobs.containsKey(fileName) || !stagedFiles.containsKey(fileName))) {
-                System.out.println("There is an untracked file in the way; " +
-                        "delete it, or add and commit it first");
-                System.exit(0);
+        Map<String, String[]> changed = Tree.diff(_HEAD.getTree(), commit.getTree());
+
+        /* if an untracked file will be overwritten by the checkout: a file
+         * the head doesn't track, or that is staged for removal, which the
+         * given commit has too if the diff doesn't say otherwise */
+        Set<String> inTheWay = new TreeSet<>();
+        for (Map.Entry<String, String[]> change : changed.entrySet()) {
+            if (change.getValue()[0] == null && change.getValue()[1] != null) {
+                inTheWay.add(change.getKey());
             }
         }
-
-        /* Write or overwrite the files in the given commit to cwd */
-        for (String fileName : givenBlobs.keySet()) {
-            String blobSha1 = givenBlobs.get(fileName);
-            byte[] contents = Utils.readContents(Utils.join(BLOBS_DIR, blobSha1));
-            File curFile = Utils.join(CWD, fileName);
-            Utils.writeContents(curFile, contents);
+        for (String fileName : stagedrmFiles) {
+            String[] change = changed.get(fileName);
+            if (change == null || change[1] != null) {
+                inTheWay.add(fileName);
+            }
+        }
+        for (String fileName : inTheWay) {
+            if (!stagedFiles.containsKey(fileName) && Utils.join(repo().root, fileName).isFile()) {
+                throw Utils.error("There is an untracked file in the way; "
+                        + "delete it, or add and commit it first");
+            }
         }
 
-        /* Any files that are tracked in the current branch
-        but are not present in the checked-out branch are deleted. */
-        for (String fileName : curBlobs.keySet()) {
-            if (!givenBlobs.containsKey(fileName)) {
-                Utils.restrictedDelete(Utils.join(CWD, fileName));
+        /* Write the files that are new or changed in the given commit, and
+         * delete those it doesn't track. The staged files are dropped, so
+         * they are written back as the given commit has them too */
+        Map<String, String> toWrite = new TreeMap<>();
+        Set<String> staged = new TreeSet<>(stagedFiles.keySet());
+        staged.addAll(stagedrmFiles);
+        for (String fileName : staged) {
+            String blobSha1 = Tree.blob(commit.getTree(), fileName);
+            if (blobSha1 != null) {
+                toWrite.put(fileName, blobSha1);
+            }
+        }
+        for (Map.Entry<String, String[]> change : changed.entrySet()) {
+            if (change.getValue()[1] == null) {
+                deleteWorkingFile(change.getKey());
+            } else {
+                toWrite.put(change.getKey(), change.getValue()[1]);
             }
         }
+        if (allTracked) {
+            toWrite.putAll(editedFiles(commit.getBlobs(), toWrite.keySet()));
+        }
+        writeWorkingFiles(toWrite);
         stagedFiles.clear();
         stagedrmFiles.clear();
         _HEAD = commit;
+        return commitId;
+    }
+
+    /** Return the files of BLOBS, except those in SKIP, that are missing
+     *  from the working directory or whose contents differ from BLOBS,
+     *  mapped to their blob ids. The stat cache spares rehashing the
+     *  files that weren't touched. */
+    private Map<String, String> editedFiles(Map<String, String> blobs, Set<String> skip) {
+        Map<String, String> edited = new TreeMap<>();
+        List<String> present = new ArrayList<>();
+        for (Map.Entry<String, String> blob : blobs.entrySet()) {
+            if (skip.contains(blob.getKey())) {
+                continue;
+            }
+            if (Utils.join(repo().root, blob.getKey()).isFile()) {
+                present.add(blob.getKey());
+            } else {
+                edited.put(blob.getKey(), blob.getValue());
+            }
+        }
+        Map<String, IndexEntry> hashed = hashWorkingFiles(present, false);
+        for (String fileName : present) {
+            if (!hashed.get(fileName).getSha1().equals(blobs.get(fileName))) {
+                edited.put(fileName, blobs.get(fileName));
+            }
+        }
+        return edited;
     }
 
     //https://docs.google.com/document/d/1r6hVlEd9X7aoECsgpA5px9rA8a7kEjECvy98IL-1NO0/edit
@@ -247,11 +433,15 @@ public class GTTree implements Serializable {
         // find files not tracked in the current commit
         Set<String> untrackedFiles = findUntrackedFiles();
 
-        for (String fileName : Utils.plainFilenamesIn(CWD)) {
+        List<String> fileInCWD = workingFiles();
+        Set<String> toHash = new HashSet<>(fileInCWD);
+        toHash.retainAll(commitBlobs.keySet());
+        Map<String, IndexEntry> hashed = hashWorkingFiles(toHash, false);
+
+        for (String fileName : fileInCWD) {
             // file in the given commit but has different context as the untracked file
             if(commitBlobs.containsKey(fileName)) {
-                byte[] content = Utils.readContents(Utils.join(CWD, fileName));
-                String cwdsha1 = Utils.sha1(content);
+                String cwdsha1 = hashed.get(fileName).getSha1();
                 if (!commitBlobs.get(fileName).equals(cwdsha1)) {
                     untrackedFiles.add(fileName);
                 }
@@ -267,8 +457,7 @@ public class GTTree implements Serializable {
 
     void branch(String branchName) {
         if (branches.containsKey(branchName)) {
-            System.out.println("A branch with that name already exists.");
-            return;
+            throw Utils.error("A branch with that name already exists.");
         }
 
         branches.put(branchName, _HEAD.getID());
@@ -276,13 +465,11 @@ public class GTTree implements Serializable {
 
     void rmBranch(String branchName) {
         if (!branches.containsKey(branchName)) {
-            System.out.println("branch with that name does not exist.");
-            return;
+            throw Utils.error("branch with that name does not exist.");
         }
 
         if (branchName.equals(currentBranch)) {
-            Utils.message("Cannot remove the current branch.");
-            return;
+            throw Utils.error("Cannot remove the current branch.");
         }
         branches.remove(branchName);
     }
@@ -297,8 +484,7 @@ public class GTTree implements Serializable {
         // print the error message No reason to remove the file.
         Map<String, String> curBlobs = _HEAD.getBlobs();
         if (!stagedFiles.containsKey(fileName) && !curBlobs.containsKey(fileName)) {
-            Utils.message("No reason to remove the file.");
-            return;
+            throw Utils.error("No reason to remove the file.");
         }
 
 
@@ -309,53 +495,52 @@ public class GTTree implements Serializable {
         if (curBlobs.containsKey(fileName)) {
             stagedrmFiles.add(fileName);
             stagedFiles.remove(fileName);
-            if (Utils.join(CWD, fileName).exists()) {
-                Utils.restrictedDelete(fileName);
+            if (Utils.join(repo().root, fileName).exists()) {
+                deleteWorkingFile(fileName);
             }
         }
     }
 
 
     /**The command is essentially checkout of an arbitrary commit
-     * that also changes the current branch head.
+     * that also changes the current branch head. Every file the commit
+     * tracks is restored, even one that is the same in the head.
      */
     void reset(String commitPrefix) {
-        checkOutCommit(commitPrefix);
-        String commitID = getCommit(commitPrefix);
-        branches.put(currentBranch, commitID);
+        branches.put(currentBranch, checkOutCommit(commitPrefix, true));
     }
 
-    void merge(String branch) {
+    /** Merge the branch BRANCH into the current branch and return how. */
+    Repository.MergeResult merge(String branch) {
         if (!stagedFiles.isEmpty() || !stagedrmFiles.isEmpty()) {
-            Utils.message("You have uncommitted changes.");
-            System.exit(0);
+            throw Utils.error("You have uncommitted changes.");
         }
 
         if (!branches.containsKey(branch)) {
-            Utils.message("A branch with that name does not exist."); return;
+            throw Utils.error("A branch with that name does not exist.");
         }
 
         if (branch.equals(currentBranch)) {
-            Utils.message("Cannot merge a branch with itself."); return;
+            throw Utils.error("Cannot merge a branch with itself.");
         }
 
         Commit givenCommit = Commit.readCommit(branches.get(branch));
-        Commit splitCommit = findSplit(branch);
 
-
-        /* If the split point is the same commit as the given branch, then we do nothing; */
-        if (splitCommit.getID().equals(givenCommit.getID())) {
-            Utils.message("Given branch is an ancestor of the current branch.");
-            System.exit(0);
+        /* If the given branch is an ancestor of the current one, then we do nothing; */
+        if (repo().bitmaps.reaches(_HEAD.getID(), givenCommit.getID())) {
+            throw Utils.error("Given branch is an ancestor of the current branch.");
         }
 
-        /* If the split point is the current branch, then the effect is to check out the given branch */
-        if (splitCommit.getID().equals(_HEAD.getID())) {
-            checkOutBranch(branch);
-            Utils.message("Current branch fast-forwarded.");
-            System.exit(0);
+        /* If the current branch is an ancestor of the given one, then the effect is to check out the given branch */
+        if (repo().bitmaps.reaches(givenCommit.getID(), _HEAD.getID())) {
+            checkOutCommit(givenCommit.getID(), false);
+            branches.put(currentBranch, givenCommit.getID());
+            repo().bitmaps.update(branches.values());
+            return Repository.MergeResult.FAST_FORWARD;
         }
 
+        Commit splitCommit = findSplit(branch);
+
 
         Map<String, String> headBlobs = _HEAD.getBlobs();
         Map<String, String> givenBlobs = givenCommit.getBlobs();
@@ -376,13 +561,17 @@ public class GTTree implements Serializable {
         for (String fileName : untracked) {
             if (givenBlobs.containsKey(fileName) &&
                     (!headBlobs.containsKey(fileName) || !stagedFiles.containsKey(fileName))) {
-                System.out.println("There is an untracked file in the way; " +
-                        "delete it, or add and commit it first");
-                System.exit(0);
+                throw Utils.error("There is an untracked file in the way; "
+                        + "delete it, or add and commit it first");
             }
         }
 
-        Map<String, String> toMerge = new HashMap<>();
+        /* The result of the merge is worked out in memory first and then
+         * written to the working directory in one go: file -> blob of the
+         * given branch, files to remove, and file -> merged contents */
+        Map<String, String> toCheckOut = new TreeMap<>();
+        List<String> toRemove = new ArrayList<>();
+        Map<String, TextMerge> merged = new TreeMap<>();
 
         for (String fileName : allFiles) {
             String givenID = givenBlobs.getOrDefault(fileName, "");
@@ -397,19 +586,20 @@ public class GTTree implements Serializable {
                 }
                 // case 5, change to other
                 if (!givenID.equals("") && curID.equals("")) {
-                    mergeAndAddFile(fileName, givenID);
+                    toCheckOut.put(fileName, givenID);
                     continue;
                 }
 
                 if (!givenID.equals("") && !curID.equals("")) {
-                    changeToConflict(fileName, curID, givenID);
-
+                    if (!givenID.equals(curID)) {
+                        merged.put(fileName, mergeFile(splitID, curID, givenID));
+                    }
                     continue;
                 }
             } else {
                 // case 6, remove file
                 if (splitID.equals(curID) && givenID.equals("")) {
-                    rmFile(fileName);
+                    toRemove.add(fileName);
                     continue;
                     }
                 }
@@ -420,7 +610,7 @@ public class GTTree implements Serializable {
                 }
                 // case 1
                 if (splitID.equals(curID) && !splitID.equals(givenID)) {
-                    mergeAndAddFile(fileName, givenID);
+                    toCheckOut.put(fileName, givenID);
                     continue;
                 }
                 // case 2
@@ -431,45 +621,48 @@ public class GTTree implements Serializable {
                 // case 3
                 if (!splitID.equals(curID) && !splitID.equals(givenID)) {
                     // current and given file either all empty or same
-                    if (curID.equals(splitID)) {
+                    if (curID.equals(givenID)) {
                         continue;
                     } else {
-                        changeToConflict(fileName, curID, givenID);
+                        merged.put(fileName, mergeFile(splitID, curID, givenID));
                         continue;
                     }
                 }
         }
-        String message = String.format("Merged %s into %s.", branch, currentBranch);
-        commit(message);
-        _HEAD.setParent2(givenCommit.getID());
-    }
-
 
-    private void mergeAndAddFile(String fileName, String fileID) {
-        File blob = Utils.join(BLOBS_DIR, fileID);
-        File curFile = Utils.join(CWD, fileName);
-        byte[] contents = Utils.readContents(blob);
-        Utils.writeContents(curFile, contents);
-        stagedFiles.put(fileName, contents);
+        for (String fileName : toRemove) {
+            rmFile(fileName);
+        }
+        writeWorkingFiles(toCheckOut);
+        for (String fileName : toCheckOut.keySet()) {
+            stagedFiles.put(fileName, index.get(fileName));
+        }
+        boolean conflict = false;
+        for (Map.Entry<String, TextMerge> m : merged.entrySet()) {
+            File file = Utils.join(repo().root, m.getKey());
+            file.getParentFile().mkdirs();
+            Utils.writeContents(file, (Object) m.getValue().content);
+            stage(m.getKey(), m.getValue().content);
+            conflict |= m.getValue().conflict;
+        }
+        String message = String.format("Merged %s into %s.", branch, currentBranch);
+        commit(message, givenCommit.getID());
+        return conflict ? Repository.MergeResult.CONFLICT : Repository.MergeResult.MERGED;
     }
 
-    private void changeToConflict(String fileName, String curID, String givenID) {
-        File file = Utils.join(CWD, fileName);
-        File curBlob = Utils.join(BLOBS_DIR, curID);
-        File givenBlob = Utils.join(BLOBS_DIR, givenID);
-        String givenContent = "";
-        String curContent = "";
-        if (!curID.equals("")) {
-            curContent = Utils.readContentsAsString(curBlob);
-        }
-        if (!givenID.equals("")) {
-            givenContent = Utils.readContentsAsString(givenBlob);
+    /** Return the merge of the versions CURID and GIVENID of a file that
+     *  was SPLITID at the split point, where "" stands for no file. Text
+     *  files both branches have are merged line by line; otherwise the
+     *  two versions conflict as a whole. */
+    private static TextMerge mergeFile(String splitID, String curID, String givenID) {
+        byte[] split = splitID.equals("") ? new byte[0] : repo().blobs.read(splitID);
+        byte[] cur = curID.equals("") ? new byte[0] : repo().blobs.read(curID);
+        byte[] given = givenID.equals("") ? new byte[0] : repo().blobs.read(givenID);
+        if (curID.equals("") || givenID.equals("")
+                || !TextMerge.isText(split) || !TextMerge.isText(cur) || !TextMerge.isText(given)) {
+            return TextMerge.conflict(cur, given);
         }
-        String conflictContent = "<<<<<<< HEAD\n" + curContent +
-                "=======\n" + givenContent + ">>>>>>>";
-        Utils.writeContents(file, conflictContent);
-        stagedFiles.put(fileName, Utils.readContents(file));
-        System.out.println("Encountered a merge conflict.");
+        return TextMerge.merge(split, cur, given);
     }
 
 
@@ -480,105 +673,46 @@ public class GTTree implements Serializable {
 
     /** find the split commit of two branch
      * Assume branch names exist */
-    private Commit findSplit(String branch) {
-        Commit current = _HEAD;
-        Commit given = Commit.readCommit(branches.get(branch));
-
-        /* Move two pointer to the same length from the root */
-        if (current.getLen() > given.getLen()) {
-            current = current.getParentCommit(current.getLen() - given.getLen());
-        } else {
-            given = given.getParentCommit(given.getLen() - current.getLen());
-        }
-        /* Move the two pointers forward 1 step as same time */
-        while(!current.getID().equals(given.getID())) {
-            current = current.getParentCommit(1);
-            given = given.getParentCommit(1);
-        }
-         return current;
-
+    Commit findSplit(String branch) {
+        String split = MergeBase.find(MergeBase.COMMITS, _HEAD.getID(), branches.get(branch));
+        return Commit.readCommit(split);
     }
 
-    void log() {
+    /** Return the commits from the head back to the initial commit,
+     *  following first parents. */
+    List<Commit> log() {
+        List<Commit> commits = new ArrayList<>();
         Commit c = _HEAD;
         while (c != null) {
-            System.out.println(c.toString());
+            commits.add(c);
             if (c.getParent() == null) {
                 break;
             }
             c = Commit.readCommit(c.getParent());
         }
+        return commits;
     }
 
-    void globalLog() {
-        for (String commitID : Utils.plainFilenamesIn(COMMITS_DIR)) {
-            Commit c = Commit.readCommit(commitID);
-            System.out.println(c.toString());
-        }
+    /** Return the log entries of every commit in the order they were made. */
+    List<String> globalLog() {
+        List<String> entries = new ArrayList<>();
+        repo().log.forEach(e -> entries.add(
+                Commit.format(e.id, e.parent, e.parent2, e.timestamp, e.message)));
+        return entries;
     }
 
     /**
-     * Prints out the ids of all commits that have the given commit message
+     * Return the ids of all commits that have the given commit message
      * */
-    void find(String message) {
-        boolean ifFind = false;
-        for (String commitID : Utils.plainFilenamesIn(COMMITS_DIR)) {
-            Commit commit = Commit.readCommit(commitID);
-            if (commit.getMessage().equals(message)) {
-                System.out.println(commitID);
-                ifFind = true;
-            }
-        }
-
-        if (!ifFind) {
-            Utils.message("Found no commit with that message.");
-        }
-
+    List<String> find(String message) {
+        return repo().log.find(message);
     }
 
-    void status() {
-        headStatus("Branches");
-        for (String branchName : branches.keySet()) {
-            if (branchName.equals(currentBranch)) {
-                System.out.print("*");
-            }
-            System.out.println(branchName);
-        }
-        System.out.println();
-
-        //print Staged Files
-        headStatus("Staged Files");
-        for (String fileName : stagedFiles.keySet()) {
-            System.out.println(fileName);
-        }
-        System.out.println();
-
-        //print Removed Files
-        headStatus("Removed Files");
-        for (String fileName : stagedrmFiles) {
-            System.out.println(fileName);
-        }
-        System.out.println();
-
-        headStatus("Modifications Not Staged For Commit");
-        Map<String, String> modified = findModifiedFiles();
-        for(String fileName : modified.keySet()) {
-            System.out.println(fileName + " " +modified.get(fileName));
-        }
-        System.out.println();
-
-        headStatus("Untracked Files");
-        Set<String> untracked = findUntrackedFiles();
-        for (String fileName : untracked) {
-            System.out.println(fileName);
-        }
-        System.out.println();
-
-    }
-
-    private void headStatus(String head) {
-        System.out.printf("=== %s ===", head);
-        System.out.println();
+    Repository.Status status() {
+        SortedMap<String, String> modified = findModifiedFiles();
+        return new Repository.Status(currentBranch, new ArrayList<>(branches.keySet()),
+                new ArrayList<>(stagedFiles.keySet()), new ArrayList<>(stagedrmFiles),
+                modified, new ArrayList<>(findUntrackedFiles()));
     }
 
 
@@ -586,7 +720,7 @@ public class GTTree implements Serializable {
         Set<String> untrackedFiles = new TreeSet<>();
         Map<String, String> curBlobs = _HEAD.getBlobs();
 
-        for (String fileName : Utils.plainFilenamesIn(CWD)) {
+        for (String fileName : workingFiles()) {
             // files that have been staged for removal, but then re-created without Gitlet's knowledge(not staged?)
             if(stagedrmFiles.contains(fileName) && !stagedFiles.containsKey(fileName)) {
                 untrackedFiles.add(fileName);
@@ -599,24 +733,30 @@ public class GTTree implements Serializable {
         return untrackedFiles;
     }
 
-    private Map<String, String> findModifiedFiles() {
+    private SortedMap<String, String> findModifiedFiles() {
         // filename -> type
-        Map<String, String> untrackedFiles = new TreeMap<>();
+        SortedMap<String, String> untrackedFiles = new TreeMap<>();
 
-        List<String> fileInCWD = Utils.plainFilenamesIn(CWD);
+        Set<String> fileInCWD = new HashSet<>(workingFiles());
         // Tracked in the current commit, changed in the working directory, but not staged
         Map<String, String> currentBlobs = _HEAD.getBlobs();
+
+        /* hash every tracked or staged working file at once */
+        Set<String> toHash = new HashSet<>(currentBlobs.keySet());
+        toHash.addAll(stagedFiles.keySet());
+        toHash.retainAll(fileInCWD);
+        Map<String, IndexEntry> hashed = hashWorkingFiles(toHash, false);
+
         for (String fileName : currentBlobs.keySet()) {
             if (fileInCWD.contains(fileName)) {
-                byte[] content = Utils.readContents(Utils.join(CWD, fileName));
-                String sha1 = Utils.sha1(content);
+                String sha1 = hashed.get(fileName).getSha1();
                 if (!currentBlobs.get(fileName).equals(sha1) && !stagedFiles.containsKey(fileName)) {
-                    untrackedFiles.put(fileName, "(modified)");
+                    untrackedFiles.put(fileName, "modified");
                 }
             } // tracked in the current commit and deleted from the working directory, Not staged for removal,
             else {
                 if (!stagedrmFiles.contains(fileName))  {
-                    untrackedFiles.put(fileName, "(deleted)");
+                    untrackedFiles.put(fileName, "deleted");
                 }
             }
         }
@@ -624,16 +764,15 @@ public class GTTree implements Serializable {
        // Staged for addition, but with different contents than in the working directory
         for (String fileName : stagedFiles.keySet()) {
                 if (fileInCWD.contains(fileName)) {
-                    String stagedSha1 = Utils.sha1(stagedFiles.get(fileName));
-                    byte[] content = Utils.readContents(Utils.join(CWD, fileName));
-                    String sha1 = Utils.sha1(content);
+                    String stagedSha1 = stagedFiles.get(fileName).getSha1();
+                    String sha1 = hashed.get(fileName).getSha1();
                     if (!stagedSha1.equals(sha1)) {
-                        untrackedFiles.put(fileName, "(modified)");
+                        untrackedFiles.put(fileName, "modified");
                     }
                 }
                 // Staged for addition, but deleted in the working directory;
                 else {
-                    untrackedFiles.put(fileName, "(deleted)");
+                    untrackedFiles.put(fileName, "deleted");
                 }
         }
         return untrackedFiles;
@@ -643,12 +782,537 @@ public class GTTree implements Serializable {
 
 
 
+    /** Write the changes of the working files from the staging area, or,
+     *  if STAGED, those of the staging area from the head commit, to OUT
+     *  as unified diffs. Untracked files are left out. */
+    void diff(boolean staged, OutputStream out) {
+        SortedMap<String, String> index = new TreeMap<>(_HEAD.getBlobs());
+        for (Map.Entry<String, IndexEntry> e : stagedFiles.entrySet()) {
+            index.put(e.getKey(), e.getValue().getSha1());
+        }
+        index.keySet().removeAll(stagedrmFiles);
+        if (staged) {
+            printDiff(Tree.diff(new TreeMap<>(_HEAD.getBlobs()), index), false, out);
+            return;
+        }
+
+        List<String> existing = new ArrayList<>();
+        for (String fileName : index.keySet()) {
+            if (Utils.join(repo().root, fileName).isFile()) {
+                existing.add(fileName);
+            }
+        }
+        SortedMap<String, String> working = new TreeMap<>();
+        for (Map.Entry<String, IndexEntry> e : hashWorkingFiles(existing, false).entrySet()) {
+            working.put(e.getKey(), e.getValue().getSha1());
+        }
+        printDiff(Tree.diff(index, working), true, out);
+    }
+
+    /** Write the changes from the commit FROMPREFIX to the commit
+     *  TOPREFIX to OUT as unified diffs. */
+    void diff(String fromPrefix, String toPrefix, OutputStream out) {
+        String from = getCommit(fromPrefix);
+        String to = getCommit(toPrefix);
+        if (from == null || to == null) {
+            throw Utils.error("No commit with that id exists.");
+        }
+        printDiff(Tree.diff(Commit.readCommit(from).getTree(),
+                Commit.readCommit(to).getTree()), false, out);
+    }
+
+    /** Write CHANGES, which map paths to {old blob, new blob}, to OUT as
+     *  unified diffs. If WORKING, the new versions are read from the
+     *  working files rather than from their blobs. */
+    private static void printDiff(SortedMap<String, String[]> changes, boolean working,
+                                  OutputStream stream) {
+        OutputStream out = new BufferedOutputStream(stream, 1 << 16);
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            String fileName = change.getKey();
+            String[] blobs = change.getValue();
+            byte[] old = blobs[0] == null ? null : repo().blobs.read(blobs[0]);
+            byte[] now = blobs[1] == null ? null
+                    : working ? Utils.readContents(Utils.join(repo().root, fileName))
+                    : repo().blobs.read(blobs[1]);
+            UnifiedDiff.write(out, fileName, old, now);
+        }
+        try {
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Move the objects of a repository created with the flat layout
+     *  into the fan-out layout, and rewrite the commits stored with Java
+     *  serialization in the encoding of Commit.encode. The state in
+     *  gitTree is rewritten in its own encoding when the command saves it.
+     *  Rewritten commits that were packed stay loose until the next gc.
+     *  Return what was done. */
+    String migrate() {
+        int moved = repo().blobs.migrate() + repo().commits.migrate();
+        int rewritten = 0;
+        for (String commitID : repo().commits.ids()) {
+            byte[] stored = repo().commits.read(commitID);
+            if (LegacyFormat.isOriginal(stored)) {
+                /* left by a conversion cut short once the state was saved */
+                repo().commits.file(commitID).delete();
+            } else if (!Commit.isEncoded(stored)) {
+                repo().commits.replace(commitID, Commit.decode(commitID, stored).encode());
+                rewritten++;
+            }
+        }
+        objectsRewritten = true;
+        return String.format("Moved %d objects.%nRewrote %d commits.", moved, rewritten);
+    }
+
+    /** Convert a repository of the original gitlet, whose state in gitTree
+     *  and flat commit files LegacyFormat reads, and return what was done,
+     *  or "" for any other repository. Each commit gets a tree built from
+     *  its blobs and, as its id is that of its new encoding, a new id; the
+     *  branches move to the new ids and the staged files become blobs.
+     *  The new commits are written first, then the state, which replaces
+     *  gitTree, and the old commits are deleted last, so a conversion cut
+     *  short is either done again or finished by migrate. */
+    static String convertOriginal() {
+        byte[] saved = repo().gitTree.isFile() ? Utils.readContents(repo().gitTree) : null;
+        if (saved == null || !LegacyFormat.isOriginal(saved)) {
+            return "";
+        }
+        LegacyFormat.OldTree old = LegacyFormat.readTree(saved);
+        Map<String, LegacyFormat.OldCommit> oldCommits = new HashMap<>();
+        for (String name : Utils.plainFilenamesIn(repo().commitsDir)) {
+            byte[] stored = Utils.readContents(Utils.join(repo().commitsDir, name));
+            if (name.length() == Utils.UID_LENGTH && LegacyFormat.isOriginal(stored)) {
+                oldCommits.put(name, LegacyFormat.readCommit(stored));
+            }
+        }
+        /* a merge stored its commit before setting the second parent */
+        LegacyFormat.OldCommit tip = oldCommits.get(old.branches.get(old.currentBranch));
+        LegacyFormat.OldCommit head = old._HEAD;
+        if (tip != null && head != null && tip.parent2 == null && head.parent2 != null
+                && oldCommits.containsKey(head.parent2)
+                && Objects.equals(tip.parent, head.parent)
+                && tip.message.equals(head.message) && tip.timestamp.equals(head.timestamp)) {
+            tip.parent2 = head.parent2;
+        }
+
+        repo().treesDir.mkdir();
+        repo().refsDir.mkdir();
+        Map<String, Commit> converted = new HashMap<>();
+        for (String oldID : oldCommits.keySet()) {
+            convertCommit(oldID, oldCommits, converted);
+        }
+
+        GTTree t = new GTTree();
+        t.currentBranch = old.currentBranch;
+        for (Map.Entry<String, String> branch : old.branches.entrySet()) {
+            Commit c = converted.get(branch.getValue());
+            if (c == null) {
+                throw Utils.error("Corrupted repository state.");
+            }
+            t.branches.put(branch.getKey(), c.getID());
+        }
+        t._HEAD = converted.get(old.branches.get(old.currentBranch));
+        for (Map.Entry<String, byte[]> staged : old.stagedFiles.entrySet()) {
+            String sha1 = Utils.sha1((Object) staged.getValue());
+            repo().blobs.write(sha1, (Object) staged.getValue());
+            t.stagedFiles.put(staged.getKey(), IndexEntry.unstatted(sha1));
+        }
+        t.stagedrmFiles.addAll(old.stagedrmFiles);
+        t.saveTree();
+
+        for (String oldID : oldCommits.keySet()) {
+            Utils.join(repo().commitsDir, oldID).delete();
+        }
+        return String.format("Converted %d commits of the original gitlet.%n",
+                oldCommits.size());
+    }
+
+    /** Write the commit OLDID of OLDCOMMITS and those it descends from
+     *  that aren't in CONVERTED yet in the encoding of Commit.encode, and
+     *  put each in CONVERTED under its old id. Parents are written first,
+     *  walking the history with a stack rather than recursion. */
+    private static void convertCommit(String oldID, Map<String, LegacyFormat.OldCommit> oldCommits,
+                                      Map<String, Commit> converted) {
+        Deque<String> stack = new ArrayDeque<>();
+        stack.push(oldID);
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            LegacyFormat.OldCommit c = oldCommits.get(id);
+            if (converted.containsKey(id)) {
+                stack.pop();
+                continue;
+            } else if (c == null) {
+                throw Utils.error("Corrupted repository state.");
+            }
+            boolean ready = true;
+            for (String parent : new String[] {c.parent, c.parent2}) {
+                if (parent != null && !converted.containsKey(parent)) {
+                    stack.push(parent);
+                    ready = false;
+                }
+            }
+            if (!ready) {
+                continue;
+            }
+            stack.pop();
+            Commit p1 = c.parent == null ? null : converted.get(c.parent);
+            Commit p2 = c.parent2 == null ? null : converted.get(c.parent2);
+            int generation = 0;
+            for (Commit p : new Commit[] {p1, p2}) {
+                if (p != null) {
+                    generation = Math.max(generation, p.getGeneration() + 1);
+                }
+            }
+            Map<String, String> blobs = c.blobs == null ? Collections.emptyMap() : c.blobs;
+            Commit now = new Commit(c.message, c.timestamp,
+                    p1 == null ? null : p1.getID(), p2 == null ? null : p2.getID(),
+                    generation, Tree.update(Tree.EMPTY.getID(), blobs));
+            repo().commits.write(now.getID(), now.encode());
+            converted.put(id, now);
+        }
+    }
+
+    /** Pack all the loose and packed objects into a new pack, storing each
+     *  commit as a delta of its parent and each tree and blob as a delta of
+     *  the previous version at the same path when that pays off. Big blobs
+     *  stay loose, so they are never read into memory. Return what was
+     *  done. */
+    String gc() {
+        List<Commit> commits = new ArrayList<>();
+        for (String commitID : repo().commits.ids()) {
+            commits.add(Commit.readCommit(commitID));
+        }
+        /* parents always come before their children */
+        commits.sort(Comparator.comparingInt(Commit::getGeneration));
+
+        List<PackFile.Entry> entries = new ArrayList<>();
+        Map<String, String> lastVersion = new HashMap<>();
+        Set<String> packedTrees = new HashSet<>();
+        for (Commit c : commits) {
+            entries.add(new PackFile.Entry(c.getID(), PackFile.COMMIT, c.getParent()));
+            packTree(c.getTree(), "", entries, lastVersion, packedTrees);
+        }
+        /* objects no commit refers to, such as blobs only in the staging area */
+        for (String treeID : repo().trees.ids()) {
+            entries.add(new PackFile.Entry(treeID, PackFile.TREE, null));
+        }
+        for (String blobID : repo().blobs.ids()) {
+            if (!repo().blobs.isBig(blobID)) {
+                entries.add(new PackFile.Entry(blobID, PackFile.BLOB, null));
+            }
+        }
+
+        Map<Byte, ObjectStore> stores = new HashMap<>();
+        stores.put(PackFile.COMMIT, repo().commits);
+        stores.put(PackFile.TREE, repo().trees);
+        stores.put(PackFile.BLOB, repo().blobs);
+        int deltas = repo().pack.write(entries, stores);
+        objectsRewritten = true;
+        int packed = 0;
+        for (Map.Entry<Byte, ObjectStore> store : stores.entrySet()) {
+            store.getValue().pruneLoose();
+            packed += repo().pack.ids(store.getKey()).size();
+        }
+        return String.format("Packed %d objects, %d as deltas.", packed, deltas);
+    }
+
+    /** Add the tree TREEID of the directory PREFIX, and the trees and blobs
+     *  under it that aren't in PACKEDTREES yet, to ENTRIES. Each object's
+     *  base is the last version packed at the same path, as recorded in
+     *  LASTVERSION (directory paths end with '/'). */
+    private static void packTree(String treeID, String prefix, List<PackFile.Entry> entries,
+                                 Map<String, String> lastVersion, Set<String> packedTrees) {
+        if (treeID.equals(Tree.EMPTY.getID()) || !packedTrees.add(treeID)) {
+            return;
+        }
+        entries.add(new PackFile.Entry(treeID, PackFile.TREE, lastVersion.get(prefix)));
+        lastVersion.put(prefix, treeID);
+        for (Map.Entry<String, Tree.Entry> e : Tree.read(treeID).getEntries().entrySet()) {
+            String path = prefix + e.getKey();
+            if (e.getValue().isTree) {
+                packTree(e.getValue().id, path + "/", entries, lastVersion, packedTrees);
+            } else if (!repo().blobs.isBig(e.getValue().id)) {
+                entries.add(new PackFile.Entry(e.getValue().id, PackFile.BLOB,
+                        lastVersion.get(path)));
+                lastVersion.put(path, e.getValue().id);
+            }
+        }
+    }
+
+    /* Start of the state written in one file by older versions, still
+     * read: "gtt" and the version */
+    private static final byte[] MAGIC = {'g', 't', 't'};
+    private static final byte VERSION = 2;
+
+    /* Start of the index file: "gix" and the version */
+    private static final byte[] INDEX_MAGIC = {'g', 'i', 'x'};
+    private static final byte INDEX_VERSION = 2;
+
+    /** Write what changed in the state of the repository since it was
+     *  read or last saved, each part to its own file, which is replaced
+     *  whole in one rename: a file under refs the commit id of each
+     *  branch, then the index, which holds the staging area and the stat
+     *  cache, and last HEAD, the name of the current branch. A commit
+     *  moves its branch before the index drops what it staged, so a crash
+     *  in between never loses staged changes, and HEAD, which marks a
+     *  repository saved in these files, comes last. A command that
+     *  changes nothing writes nothing; any other bumps the generation,
+     *  so the index is always written. */
     public void saveTree() {
-        Utils.writeObject(GTTree.GIT_TREE, this);
+        Map<String, String> saved = savedBranches == null
+                ? Collections.emptyMap() : savedBranches;
+        byte[] encoded = encodeIndex();
+        if (!objectsRewritten && currentBranch.equals(savedBranch)
+                && branches.equals(saved) && Arrays.equals(encoded, savedIndex)) {
+            return;
+        }
+        generation++;
+        ByteBuffer.wrap(encoded).putLong(INDEX_MAGIC.length + 1, generation);
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            if (!branch.getValue().equals(saved.get(branch.getKey()))) {
+                File ref = Utils.join(repo().refsDir, refName(branch.getKey()));
+                ref.getParentFile().mkdirs();
+                Utils.writeAtomically(ref, branch.getValue(), "\n");
+            }
+        }
+        for (String branchName : saved.keySet()) {
+            if (!branches.containsKey(branchName)) {
+                Utils.join(repo().refsDir, refName(branchName)).delete();
+            }
+        }
+        savedBranches = new TreeMap<>(branches);
+        Utils.writeAtomically(repo().indexFile, (Object) encoded);
+        savedIndex = encoded;
+        objectsRewritten = false;
+        if (!currentBranch.equals(savedBranch)) {
+            Utils.writeAtomically(repo().headFile, currentBranch, "\n");
+            savedBranch = currentBranch;
+        }
+        /* a repository saved in one file by an older version is now moved */
+        if (repo().gitTree.exists()) {
+            repo().gitTree.delete();
+        }
     }
 
+    /** Read the state of the repository saved by saveTree, or saved in
+     *  gitTree by an older version. */
     public static GTTree readTree() {
-        return Utils.readObject(GIT_TREE, GTTree.class);
+        if (!repo().headFile.exists()) {
+            return decode(Utils.readContents(repo().gitTree));
+        }
+        byte[] saved = Utils.readContents(repo().indexFile);
+        GTTree t = decodeIndex(saved);
+        t.savedIndex = saved;
+        t.currentBranch = Utils.readContentsAsString(repo().headFile).trim();
+        t.savedBranch = t.currentBranch;
+        readRefs(repo().refsDir, "", t.branches);
+        t.savedBranches = new TreeMap<>(t.branches);
+        t._HEAD = Commit.readCommit(t.branches.get(t.currentBranch));
+        return t;
+    }
+
+    /** Put the branches under DIR, whose names start with PREFIX, in
+     *  BRANCHES. Files starting with '.' are those being written. */
+    private static void readRefs(File dir, String prefix, Map<String, String> branches) {
+        for (String name : Utils.plainFilenamesIn(dir)) {
+            if (!name.startsWith(".")) {
+                branches.put(prefix + branchName(name),
+                        Utils.readContentsAsString(Utils.join(dir, name)).trim());
+            }
+        }
+        for (String name : Utils.directoriesIn(dir)) {
+            readRefs(Utils.join(dir, name), prefix + name + "/", branches);
+        }
+    }
+
+    /** Return the name of the file under refs holding the branch
+     *  BRANCHNAME. Any name is a map key to gitlet, so it is escaped into
+     *  one plain file name that isn't hidden: the bytes of its UTF-8
+     *  encoding other than letters, digits, '-', '_' and a '.' that
+     *  doesn't start it are written as '%' and two hex digits. */
+    static String refName(String branchName) {
+        StringBuilder name = new StringBuilder();
+        byte[] bytes = branchName.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            if (b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9'
+                    || b == '-' || b == '_' || b == '.' && i > 0) {
+                name.append((char) b);
+            } else {
+                name.append(String.format("%%%02X", b));
+            }
+        }
+        return name.toString();
+    }
+
+    /** Return the branch held in the file under refs named REFNAME. */
+    static String branchName(String refName) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 0; i < refName.length(); ) {
+            if (refName.charAt(i) == '%' && i + 2 < refName.length()) {
+                bytes.write(Integer.parseInt(refName.substring(i + 1, i + 3), 16));
+                i += 3;
+            } else {
+                int c = refName.codePointAt(i);
+                bytes.writeBytes(new String(Character.toChars(c))
+                        .getBytes(StandardCharsets.UTF_8));
+                i += Character.charCount(c);
+            }
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Return the generation of the saved state, read from the head of
+     *  the index: 0 for an index of the first version, and -1 for a
+     *  repository with no index yet. It differs from the generation of a
+     *  state read or saved before exactly when another instance or
+     *  process saved since, however soon after. */
+    static long stateStamp() {
+        try (DataInputStream in = new DataInputStream(
+                new FileInputStream(repo().indexFile))) {
+            in.skipBytes(INDEX_MAGIC.length);
+            return in.readByte() >= 2 ? in.readLong() : 0;
+        } catch (IOException excp) {
+            return -1;
+        }
+    }
+
+    /** Return the generation of this state, as stateStamp returned it
+     *  when this state was read or last saved. */
+    long generation() {
+        return generation;
+    }
+
+
+    /** Return the encoding of the index: INDEX_MAGIC, INDEX_VERSION, the
+     *  generation as a long, then the staged files, the files staged for removal and the stat cache,
+     *  each as a count int followed by its entries sorted by name. It is
+     *  written by hand rather than with Java serialization, so reading it
+     *  back, which every command does first, needs no reflection. The
+     *  names of staged files and of the stat cache are written as the
+     *  length of the prefix they share with the previous name and the
+     *  rest of the name. */
+    byte[] encodeIndex() {
+        ByteArrayOutputStream bytes = new Utils.Bytes(1 << 12);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(INDEX_MAGIC);
+            out.writeByte(INDEX_VERSION);
+            out.writeLong(generation);
+            writeEntries(out, stagedFiles);
+            out.writeInt(stagedrmFiles.size());
+            for (String fileName : stagedrmFiles) {
+                Utils.writeString(out, fileName);
+            }
+            writeEntries(out, index);
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding the repository.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return a state holding the index encoded as SAVED by encodeIndex,
+     *  and no branches. */
+    static GTTree decodeIndex(byte[] saved) {
+        if (saved.length <= INDEX_MAGIC.length
+                || !Arrays.equals(Arrays.copyOf(saved, INDEX_MAGIC.length), INDEX_MAGIC)) {
+            throw Utils.error("Corrupted repository state.");
+        }
+        GTTree t = new GTTree();
+        try (DataInputStream in = Utils.dataInput(saved)) {
+            in.skipBytes(INDEX_MAGIC.length);
+            int version = in.readByte();
+            if (version > INDEX_VERSION) {
+                throw Utils.error("Repository written by a newer version of gitlet.");
+            }
+            if (version >= 2) {
+                t.generation = in.readLong();
+            }
+            /* every version of the index shares name prefixes */
+            readEntries(in, true, t.stagedFiles);
+            for (int i = in.readInt(); i > 0; i--) {
+                t.stagedrmFiles.add(Utils.readString(in));
+            }
+            readEntries(in, true, t.index);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupted repository state.");
+        }
+        return t;
+    }
+
+    /** Return the state of the repository saved in one file by an older
+     *  version as SAVED, either in its own encoding, of which VERSION is
+     *  the last, or with Java serialization. */
+    static GTTree decode(byte[] saved) {
+        if (saved.length <= MAGIC.length
+                || !Arrays.equals(Arrays.copyOf(saved, MAGIC.length), MAGIC)) {
+            if (LegacyFormat.isOriginal(saved)) {
+                throw Utils.error(LegacyFormat.MIGRATE);
+            }
+            return Utils.deserialize(saved, GTTree.class);
+        }
+        GTTree t = new GTTree();
+        try (DataInputStream in = Utils.dataInput(saved)) {
+            in.skipBytes(MAGIC.length);
+            int version = in.readByte();
+            if (version > VERSION) {
+                throw Utils.error("Repository written by a newer version of gitlet.");
+            }
+            t._HEAD = Commit.readCommit(Utils.readString(in));
+            t.currentBranch = Utils.readString(in);
+            for (int i = in.readInt(); i > 0; i--) {
+                t.branches.put(Utils.readString(in), Utils.readString(in));
+            }
+            readEntries(in, version >= 2, t.stagedFiles);
+            for (int i = in.readInt(); i > 0; i--) {
+                t.stagedrmFiles.add(Utils.readString(in));
+            }
+            readEntries(in, version >= 2, t.index);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupted repository state.");
+        }
+        return t;
+    }
+
+    private static void writeEntries(DataOutputStream out, Map<String, IndexEntry> entries)
+            throws IOException {
+        out.writeInt(entries.size());
+        String previous = "";
+        for (Map.Entry<String, IndexEntry> e : entries.entrySet()) {
+            String name = e.getKey();
+            int shared = 0;
+            int limit = Math.min(name.length(), previous.length());
+            while (shared < limit && name.charAt(shared) == previous.charAt(shared)) {
+                shared++;
+            }
+            /* never split a surrogate pair, whose halves alone aren't UTF-8 */
+            if (shared > 0 && Character.isHighSurrogate(name.charAt(shared - 1))) {
+                shared--;
+            }
+            Utils.writeVarLong(out, shared);
+            Utils.writeString(out, name.substring(shared));
+            e.getValue().write(out);
+            previous = name;
+        }
+    }
+
+    /** Read the entries written by writeEntries into ENTRIES, or, unless
+     *  PREFIXED, those of the first gitTree version, which wrote each name
+     *  whole and the stat data in fixed size fields. */
+    private static void readEntries(DataInputStream in, boolean prefixed,
+                                    Map<String, IndexEntry> entries) throws IOException {
+        String previous = "";
+        for (int i = in.readInt(); i > 0; i--) {
+            if (!prefixed) {
+                entries.put(Utils.readString(in), IndexEntry.readVersion1(in));
+                continue;
+            }
+            String name = previous.substring(0, (int) Utils.readVarLong(in))
+                    + Utils.readString(in);
+            entries.put(name, IndexEntry.read(in));
+            previous = name;
+        }
     }
 
 
@@ -0,0 +1,313 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/** Tests of the state of a repository as saved in its files, and as
+ *  older versions saved it in gitTree.
+ *  @author Tianyi Xu
+ */
+public class GTTreeTest {
+
+    /** Return a repository with a commit on master, a branch other and
+     *  a staged file s.txt. */
+    private static Repository repositoryWithState() {
+        Repository repo = UnitTest.scratchRepository();
+        Utils.writeContents(new File(repo.root, "f.txt"), "one");
+        repo.add("f.txt");
+        repo.commit("one");
+        repo.branch("other");
+        Utils.writeContents(new File(repo.root, "s.txt"), "staged");
+        repo.add("s.txt");
+        return repo;
+    }
+
+    /** Replace the saved state of REPO by gitTree holding SAVED, as an
+     *  older version left it, and return the repository read anew. */
+    private static Repository toGitTree(Repository repo, byte[] saved) {
+        assertTrue(repo.headFile.delete());
+        assertTrue(repo.indexFile.delete());
+        for (String name : Utils.plainFilenamesIn(repo.refsDir)) {
+            assertTrue(Utils.join(repo.refsDir, name).delete());
+        }
+        Utils.writeContents(repo.gitTree, (Object) saved);
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        return reopened;
+    }
+
+    /** Check that REPO, read from gitTree, has the state of
+     *  repositoryWithState, and that the next save replaces gitTree. */
+    private static void checkMigrated(Repository repo, String head) {
+        assertTrue(repo.exists());
+        Repository.Status status = repo.status();
+        assertEquals("master", status.currentBranch);
+        assertEquals(List.of("master", "other"), status.branches);
+        assertEquals(List.of("s.txt"), status.staged);
+
+        String next = repo.commit("two");
+        assertFalse(repo.gitTree.exists());
+        assertTrue(repo.headFile.exists());
+        assertTrue(repo.indexFile.exists());
+        assertEquals(next, Utils.readContentsAsString(
+                Utils.join(repo.refsDir, "master")).trim());
+        assertEquals(head, Utils.readContentsAsString(
+                Utils.join(repo.refsDir, "other")).trim());
+
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        assertEquals(List.of("master", "other"), reopened.status().branches);
+        assertEquals(List.of(), reopened.status().staged);
+        assertEquals(head, reopened.log().get(1).getID());
+    }
+
+    @Test
+    public void migratesStateInItsOwnEncoding() throws IOException {
+        Repository repo = repositoryWithState();
+        String head = repo.log().get(0).getID();
+        IndexEntry staged = new IndexEntry(Utils.sha1("staged"),
+                new File(repo.root, "s.txt"));
+
+        /* the encoding of version 2: "gtt", the version, the head, the
+         * current branch, the branches, then the staged files, the files
+         * staged for removal and the stat cache */
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[] {'g', 't', 't', 2});
+        Utils.writeString(out, head);
+        Utils.writeString(out, "master");
+        out.writeInt(2);
+        for (String branch : List.of("master", "other")) {
+            Utils.writeString(out, branch);
+            Utils.writeString(out, head);
+        }
+        out.writeInt(1);
+        Utils.writeVarLong(out, 0);
+        Utils.writeString(out, "s.txt");
+        staged.write(out);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.close();
+
+        checkMigrated(toGitTree(repo, bytes.toByteArray()), head);
+    }
+
+    @Test
+    public void migratesStateSavedWithJavaSerialization() {
+        Repository repo = repositoryWithState();
+        String head = repo.log().get(0).getID();
+        byte[] saved = Utils.serialize(GTTree.readTree());
+
+        checkMigrated(toGitTree(repo, saved), head);
+    }
+
+    /** The repository testing/baseline was made by the original gitlet:
+     *  "two files" adds wug.txt and notwug.txt, branch other adds g.txt,
+     *  master changes wug.txt and merges other, then s.txt is staged and
+     *  notwug.txt staged for removal. */
+    @Test
+    public void repositoryOfTheOriginalGitletAsksForMigrate() {
+        Repository repo = new Repository(UnitTest.fixture("baseline"));
+        repo.makeCurrent();
+        for (Runnable op : List.<Runnable>of(repo::status, repo::log, repo::gc,
+                () -> repo.checkout("other"), () -> repo.branch("new"))) {
+            try {
+                op.run();
+                fail("expected: " + LegacyFormat.MIGRATE);
+            } catch (GitletException excp) {
+                assertEquals(LegacyFormat.MIGRATE, excp.getMessage());
+            }
+        }
+        assertTrue(repo.gitTree.exists());
+        assertFalse(repo.headFile.exists());
+
+        /* its commits are told apart too, and only its own */
+        byte[] stored = Utils.readContents(Utils.join(repo.commitsDir,
+                "ccd554adb4f655f9fce66273e52efd1d79114272"));
+        assertTrue(LegacyFormat.isOriginal(stored));
+        assertTrue(LegacyFormat.isOriginal(Utils.readContents(repo.gitTree)));
+        assertEquals("initial commit", LegacyFormat.readCommit(stored).message);
+        assertFalse(LegacyFormat.isOriginal(Utils.serialize(new GTTree())));
+        /* a later Commit with blobs, as the versions that added its id
+         * wrote it, has the same name but another serialVersionUID, which
+         * follows the header, TC_OBJECT, TC_CLASSDESC and the name */
+        byte[] later = stored.clone();
+        later[4 + 2 + 2 + "gitlet.Commit".length()] ^= 1;
+        assertFalse(LegacyFormat.isOriginal(later));
+        assertFalse(LegacyFormat.isOriginal("plain".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void migratesARepositoryOfTheOriginalGitlet() {
+        Repository repo = new Repository(UnitTest.fixture("baseline"));
+        repo.makeCurrent();
+        assertEquals(String.format("Converted 5 commits of the original gitlet.%n"
+                + "Moved 4 objects.%nRewrote 0 commits."), repo.migrate());
+        assertFalse(repo.gitTree.exists());
+        Repository.Status status = repo.status();
+        assertEquals("master", status.currentBranch);
+        assertEquals(List.of("master", "other"), status.branches);
+        assertEquals(List.of("s.txt"), status.staged);
+        assertEquals(List.of("notwug.txt"), status.removed);
+
+        List<Commit> log = repo.log();
+        assertEquals(List.of("Merged other into master.", "change wug", "two files",
+                "initial commit"), log.stream().map(Commit::getMessage).toList());
+        Commit merge = log.get(0);
+        assertNotNull(merge.getParent2());
+        assertEquals("add g", Commit.readCommit(merge.getParent2()).getMessage());
+        assertEquals(0, log.get(3).getTimestamp().getTime());
+        assertEquals(3, merge.getGeneration());
+        /* the ids are those of the new encoding */
+        assertEquals(5, repo.commits.ids().size());
+        assertFalse(repo.commits.ids().contains("0ea51e5237e61a6a6d14f4ed60744bad6bc4404d"));
+        assertEquals(Set.of("wug.txt", "notwug.txt", "g.txt"), merge.getBlobs().keySet());
+        assertEquals("This is a wug.\n", new String(repo.blobs.read(
+                log.get(2).getBlobs().get("wug.txt")), StandardCharsets.UTF_8));
+
+        /* the converted repository works as any other */
+        String committed = repo.commit("after migrate");
+        assertEquals(merge.getID(), repo.log().get(1).getID());
+        repo.checkout("other");
+        assertFalse(new File(repo.root, "s.txt").exists());
+        repo.checkoutFile(committed, "s.txt");
+        assertEquals("staged\n", Utils.readContentsAsString(new File(repo.root, "s.txt")));
+        assertEquals(String.format("Moved 0 objects.%nRewrote 0 commits."), repo.migrate());
+        assertEquals(6, repo.globalLog().size());
+    }
+
+    @Test
+    public void refsBeingWrittenAreNotBranches() {
+        Repository repo = repositoryWithState();
+
+        /* as a save cut short by a crash before its rename leaves it */
+        Utils.writeContents(Utils.join(repo.refsDir, ".master.1234567.tmp"), "0\n");
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        assertEquals(List.of("master", "other"), reopened.status().branches);
+    }
+
+    @Test
+    public void concurrentSavesOfOneFileStayWhole() throws InterruptedException {
+        Repository repo = repositoryWithState();
+        File ref = Utils.join(repo.refsDir, "shared");
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String contents = String.valueOf(t).repeat(100000);
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 50; i++) {
+                        Utils.writeAtomically(ref, contents);
+                        String read = Utils.readContentsAsString(ref);
+                        assertEquals(100000, read.length());
+                        assertEquals(read.charAt(0) + "", read.substring(99999));
+                    }
+                } catch (Throwable excp) {
+                    errors.add(excp);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of(), errors);
+        assertEquals(List.of("master", "other", "shared"),
+                Utils.plainFilenamesIn(repo.refsDir));
+    }
+
+    @Test
+    public void unchangedRefsAreNotWritten() {
+        /* the index may be written again, as the stat cache settles */
+        Repository repo = repositoryWithState();
+        List<File> files = List.of(repo.headFile,
+                Utils.join(repo.refsDir, "master"), Utils.join(repo.refsDir, "other"));
+        for (File file : files) {
+            assertTrue(file.setLastModified(1000));
+        }
+        repo.log();
+        repo.status();
+        for (File file : files) {
+            assertEquals(file.getName(), 1000, file.lastModified());
+        }
+    }
+
+    @Test
+    public void branchNamesThatLookLikePaths() {
+        Repository repo = repositoryWithState();
+        List<String> names = List.of("../index", "x", "x/y", ".hidden", "..", "a b%20",
+                "\u00e9t\u00e9");
+        for (String name : names) {
+            repo.branch(name);
+            assertEquals(name, GTTree.branchName(GTTree.refName(name)));
+        }
+        assertEquals(List.of("s.txt"), repo.status().staged);
+
+        /* every branch is one plain file under refs, none hidden */
+        for (String name : Utils.plainFilenamesIn(repo.refsDir)) {
+            assertFalse(name, name.startsWith(".") || name.contains("/"));
+        }
+        assertTrue(Utils.directoriesIn(repo.refsDir).isEmpty());
+
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        List<String> expected = new ArrayList<>(names);
+        expected.add("master");
+        expected.add("other");
+        Collections.sort(expected);
+        assertEquals(expected, reopened.status().branches);
+        assertEquals(List.of("s.txt"), reopened.status().staged);
+
+        reopened.rmBranch("../index");
+        reopened.rmBranch("x");
+        Repository again = new Repository(repo.root);
+        again.makeCurrent();
+        assertTrue(again.status().branches.contains("x/y"));
+        assertFalse(again.status().branches.contains("x"));
+        assertFalse(again.status().branches.contains("../index"));
+    }
+
+    @Test
+    public void stagingKeepsOnlyTheIdsOfTheFiles() {
+        Repository repo = repositoryWithState();
+        byte[] contents = new byte[1 << 20];
+        new Random(1).nextBytes(contents);
+        File big = new File(repo.root, "big.bin");
+        Utils.writeContents(big, (Object) contents);
+        String id = Utils.sha1((Object) contents);
+
+        /* add stores the blob, and the state only names it */
+        repo.add("big.bin");
+        assertTrue(repo.blobs.contains(id));
+        assertTrue(repo.indexFile.length() < 1024);
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        assertEquals(List.of("big.bin", "s.txt"), reopened.status().staged);
+        assertTrue(repo.indexFile.length() < 1024);
+
+        /* commit writes no blob: it commits what was added, even once the
+         * file has changed or is gone */
+        Set<String> blobs = new HashSet<>(reopened.blobs.ids());
+        assertTrue(big.delete());
+        String committed = reopened.commit("big");
+        assertEquals(blobs, new HashSet<>(reopened.blobs.ids()));
+        assertEquals(id, Commit.readCommit(committed).getBlobs().get("big.bin"));
+        reopened.checkoutFile("big.bin");
+        assertArrayEquals(contents, Utils.readContents(big));
+    }
+}
@@ -0,0 +1,204 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/** Benchmark of the hot paths of gitlet on a synthetic repository.  Usage:
+ *      java gitlet.HotPathBenchmark [FILES [SIZE [DEPTH [ROUNDS]]]]
+ *  Makes a scratch repository of FILES files (default 2000) of SIZE bytes
+ *  (default 4096) spread over 32 directories, with a history of DEPTH
+ *  commits on master (default 200) that each change one file in a
+ *  hundred, a branch "side" forked half way with as many commits of its
+ *  own, a branch "wide" whose one commit changes every file and a
+ *  branch "narrow" whose one commit changes three files. Each
+ *  benchmark then runs ROUNDS rounds (default 20) to warm up and ROUNDS
+ *  rounds that are timed, and the mean, deviation and minimum time of an
+ *  operation over the timed rounds are reported.
+ *  @author Tianyi Xu
+ */
+public class HotPathBenchmark {
+    /* Directories the files are spread over */
+    private static final int DIRECTORIES = 32;
+    /* Most blobs hashed in a round of the sha1 benchmark */
+    private static final int SHA1_BLOBS = 1000;
+
+    private static int rounds;
+
+    public static void main(String... args) throws IOException {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        rounds = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        File dir = Files.createTempDirectory("gitlet-bench").toFile();
+        Repository repository = new Repository(dir);
+        repository.makeCurrent();
+        long start = System.nanoTime();
+        Synthetic repo = new Synthetic(files, size, depth);
+        System.out.printf("built %d files of %d bytes, %d commits in %.1f s%n",
+                files, size, repo.history.size(), (System.nanoTime() - start) / 1e9);
+
+        System.out.printf("%-30s %8s %12s %12s %12s%n",
+                "", "ops", "mean us/op", "+- us/op", "min us/op");
+        List<byte[]> blobs = new ArrayList<>();
+        for (int i = 0; i < Math.min(files, SHA1_BLOBS); i++) {
+            blobs.add(Utils.readContents(Utils.join(dir, repo.names.get(i))));
+        }
+        measure("Utils.sha1", blobs.size(), () -> {
+            for (byte[] blob : blobs) {
+                Utils.sha1(blob);
+            }
+        });
+        String tip = repo.tree.branches.get("master");
+        String tree = Commit.readCommit(tip).getTree();
+        measure("Commit.getID of a new commit", depth, () -> {
+            for (int i = 0; i < depth; i++) {
+                new Commit("commit " + i, tip, tree).getID();
+            }
+        });
+        measure("Commit.readCommit, uncached", repo.history.size(), () -> {
+            repository.cache.clear();
+            for (String commitId : repo.history) {
+                Commit.readCommit(commitId);
+            }
+        });
+        repo.tree.saveTree();
+        measure("GTTree.saveTree", 1, repo.tree::saveTree);
+        measure("GTTree.readTree", 1, GTTree::readTree);
+        measure("findSplit of master and side", 1, () -> repo.tree.findSplit("side"));
+
+        measure("status", 1, repo.tree::status);
+        measure("checkout of a wide commit", 2, () -> {
+            repo.tree.checkOutBranch("wide");
+            repo.tree.checkOutBranch("master");
+        });
+        measure("checkout of a narrow commit", 2, () -> {
+            repo.tree.checkOutBranch("narrow");
+            repo.tree.checkOutBranch("master");
+        });
+
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /** Time OPS operations done by ROUND and report them as NAME. */
+    private static void measure(String name, int ops, Runnable round) {
+        report(name, ops, time(ops, round));
+    }
+
+    /** Run ROUND, which does OPS operations, for the warm up rounds and
+     *  then for the timed rounds, and return the time of an operation in
+     *  each timed round in microseconds. */
+    private static double[] time(int ops, Runnable round) {
+        for (int r = 0; r < rounds; r++) {
+            round.run();
+        }
+        double[] micros = new double[rounds];
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            round.run();
+            micros[r] = (System.nanoTime() - start) / 1e3 / ops;
+        }
+        return micros;
+    }
+
+    private static void report(String name, int ops, double[] micros) {
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        for (double m : micros) {
+            sum += m;
+            min = Math.min(min, m);
+        }
+        double mean = sum / micros.length;
+        double squares = 0;
+        for (double m : micros) {
+            squares += (m - mean) * (m - mean);
+        }
+        System.out.printf("%-30s %8d %12.2f %12.2f %12.2f%n", name, ops, mean,
+                Math.sqrt(squares / micros.length), min);
+    }
+
+    /** A repository built with the commands themselves in the working
+     *  directory, as described above. */
+    private static class Synthetic {
+        final GTTree tree = new GTTree();
+        /* The names of the files, in the order they were created */
+        final List<String> names = new ArrayList<>();
+        /* The ids of every commit */
+        final List<String> history = new ArrayList<>();
+        private final int size;
+        private final Random random = new Random(61);
+
+        Synthetic(int files, int size, int depth) {
+            this.size = size;
+            tree.init();
+            history.add(tree.branches.get("master"));
+            for (int i = 0; i < files; i++) {
+                names.add("d" + i % DIRECTORIES + "/f" + i + ".txt");
+            }
+            change(names, "master", "all files");
+
+            int changed = Math.max(1, files / 100);
+            for (int d = 1; d < depth; d++) {
+                if (d == depth / 2) {
+                    tree.branch("side");
+                }
+                change(pick(changed), "master", "master " + d);
+            }
+            tree.checkOutBranch("side");
+            for (int d = depth / 2; d < depth; d++) {
+                change(pick(changed), "side", "side " + d);
+            }
+            tree.checkOutBranch("master");
+            tree.branch("wide");
+            tree.checkOutBranch("wide");
+            change(names, "wide", "every file");
+            tree.checkOutBranch("master");
+            tree.branch("narrow");
+            tree.checkOutBranch("narrow");
+            change(pick(Math.min(3, files)), "narrow", "three files");
+            tree.checkOutBranch("master");
+        }
+
+        /** Return COUNT different files chosen at random. */
+        private List<String> pick(int count) {
+            Set<String> picked = new LinkedHashSet<>();
+            while (picked.size() < count) {
+                picked.add(names.get(random.nextInt(names.size())));
+            }
+            return new ArrayList<>(picked);
+        }
+
+        /** Write new contents to FILES and commit them with MESSAGE on
+         *  BRANCH, the current branch. */
+        private void change(List<String> files, String branch, String message) {
+            for (String name : files) {
+                File file = Utils.join(Repository.current().root, name);
+                file.getParentFile().mkdirs();
+                Utils.writeContents(file, (Object) contents());
+            }
+            tree.add(files);
+            tree.commit(message);
+            history.add(tree.branches.get(branch));
+        }
+
+        /** Return SIZE random lines of text. */
+        private byte[] contents() {
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                bytes[i] = i % 64 == 63 ? (byte) '\n' : (byte) ('a' + random.nextInt(26));
+            }
+            return bytes;
+        }
+    }
+}
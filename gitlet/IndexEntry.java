@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+/** The blob id of a working file together with the stat data the file
+ *  had when it was hashed. As long as the stat data doesn't change the
+ *  file needn't be read and hashed again. Used both for the staging
+ *  area and for the stat cache of the working directory.
+ *  @author Tianyi Xu
+ */
+class IndexEntry implements Serializable {
+    /* that of the entries in the states saved with Java serialization by
+     * the first versions with a stat cache; the original gitlet had no
+     * such class */
+    private static final long serialVersionUID = -7545071446286465823L;
+
+    /* A file modified less than this many milliseconds before it was
+     * stat'ed may change again without its mtime changing */
+    private static final long RACY_WINDOW = 2000;
+
+    /* sha1 of the contents, also the name of its blob */
+    private final String sha1;
+    /* size of the file in bytes */
+    private final long size;
+    /* last modified time of the file */
+    private final long mtime;
+    /* last status change time of the file, or its creation time
+     * where there is no such thing */
+    private final long ctime;
+    /* inode number of the file, 0 where there is no such thing */
+    private final long inode;
+    /* the time the stat data was taken */
+    private final long recorded;
+
+    private IndexEntry(String sha1, long size, long mtime, long ctime,
+                       long inode, long recorded) {
+        this.sha1 = sha1;
+        this.size = size;
+        this.mtime = mtime;
+        this.ctime = ctime;
+        this.inode = inode;
+        this.recorded = recorded;
+    }
+
+    /** Entry for the blob SHA1 with stat data no file has, for a blob
+     *  staged while its file wasn't stat'ed. */
+    static IndexEntry unstatted(String sha1) {
+        return new IndexEntry(sha1, -1, 0, 0, 0, 0);
+    }
+
+    /** Entry for the blob SHA1 with the current stat data of FILE. */
+    IndexEntry(String sha1, File file) {
+        this(sha1, stat(file));
+    }
+
+    private IndexEntry(String sha1, IndexEntry stat) {
+        this(sha1, stat.size, stat.mtime, stat.ctime, stat.inode, stat.recorded);
+    }
+
+    /** Return the current stat data of FILE, without a blob id. Take it
+     *  before reading the file, so a change made while the file is being
+     *  hashed shows up as changed stat data later. */
+    static IndexEntry stat(File file) {
+        long now = System.currentTimeMillis();
+        try {
+            Map<String, Object> attrs = Files.readAttributes(file.toPath(),
+                    "unix:size,lastModifiedTime,ctime,ino");
+            return new IndexEntry(null, (Long) attrs.get("size"),
+                    ((FileTime) attrs.get("lastModifiedTime")).toMillis(),
+                    ((FileTime) attrs.get("ctime")).toMillis(),
+                    (Long) attrs.get("ino"), now);
+        } catch (UnsupportedOperationException | IllegalArgumentException excp) {
+            /* not a unix file system */
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                        BasicFileAttributes.class);
+                return new IndexEntry(null, attrs.size(), attrs.lastModifiedTime().toMillis(),
+                        attrs.creationTime().toMillis(), 0, now);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return this stat data with the blob id SHA1. */
+    IndexEntry withSha1(String sha1) {
+        return new IndexEntry(sha1, this);
+    }
+
+    /** Return true iff FILE still has the stat data of this entry and it
+     *  was modified long enough before the entry was taken for the
+     *  stat data to be trusted. */
+    boolean isUpToDate(File file) {
+        if (!file.isFile() || recorded - mtime < RACY_WINDOW) {
+            return false;
+        }
+        IndexEntry now = stat(file);
+        return size == now.size && mtime == now.mtime
+                && ctime == now.ctime && inode == now.inode;
+    }
+
+    /** Write this entry to OUT: a byte telling whether there is a blob
+     *  id, the id in 20 bytes, the size, the mtime, then the ctime, the
+     *  inode and the time the stat data was taken. All but the mtime are
+     *  written with Utils.writeVarLong, the two times as their distance
+     *  from the mtime. */
+    void write(DataOutputStream out) throws IOException {
+        out.writeBoolean(sha1 != null);
+        if (sha1 != null) {
+            out.write(Utils.fromHex(sha1));
+        }
+        Utils.writeVarLong(out, size);
+        out.writeLong(mtime);
+        Utils.writeVarLong(out, zigzag(ctime - mtime));
+        Utils.writeVarLong(out, inode);
+        Utils.writeVarLong(out, zigzag(recorded - mtime));
+    }
+
+    /** Return an entry written by write read from IN. */
+    static IndexEntry read(DataInputStream in) throws IOException {
+        String sha1 = null;
+        if (in.readBoolean()) {
+            byte[] raw = new byte[Utils.UID_LENGTH / 2];
+            in.readFully(raw);
+            sha1 = Utils.toHex(raw);
+        }
+        long size = Utils.readVarLong(in);
+        long mtime = in.readLong();
+        long ctime = mtime + unzigzag(Utils.readVarLong(in));
+        long inode = Utils.readVarLong(in);
+        long recorded = mtime + unzigzag(Utils.readVarLong(in));
+        return new IndexEntry(sha1, size, mtime, ctime, inode, recorded);
+    }
+
+    /** Return an entry in the layout of the first version of the
+     *  gitTree encoding, all fields at full width, read from IN. */
+    static IndexEntry readVersion1(DataInputStream in) throws IOException {
+        return new IndexEntry(Utils.readString(in), in.readLong(), in.readLong(),
+                in.readLong(), in.readLong(), in.readLong());
+    }
+
+    /* Map small negative numbers to small unsigned ones */
+    private static long zigzag(long x) {
+        return (x << 1) ^ (x >> 63);
+    }
+
+    private static long unzigzag(long x) {
+        return (x >>> 1) ^ -(x & 1);
+    }
+
+    String getSha1() {
+        return sha1;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getMtime() {
+        return mtime;
+    }
+}
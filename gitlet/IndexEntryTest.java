@@ -0,0 +1,99 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/** Tests of the stat data kept for working files, and of when it is
+ *  trusted instead of hashing the file again.
+ *  @author Tianyi Xu
+ */
+public class IndexEntryTest {
+
+    /** Return a file holding CONTENTS, last modified SECONDS ago. */
+    private static File fileModifiedAgo(String contents, int seconds) {
+        File file = new File(UnitTest.scratchDirectory(), "f.txt");
+        Utils.writeContents(file, contents);
+        assertTrue(file.setLastModified(System.currentTimeMillis() - seconds * 1000L));
+        return file;
+    }
+
+    @Test
+    public void oldFileIsTrustedUntilItsStatChanges() {
+        File file = fileModifiedAgo("one", 10);
+        IndexEntry entry = new IndexEntry(Utils.sha1("one"), file);
+        assertTrue(entry.isUpToDate(file));
+
+        assertTrue(file.setLastModified(file.lastModified() - 1000));
+        assertFalse(entry.isUpToDate(file));
+
+        File grown = fileModifiedAgo("one", 10);
+        IndexEntry before = new IndexEntry(Utils.sha1("one"), grown);
+        Utils.writeContents(grown, "longer");
+        assertTrue(grown.setLastModified(before.getMtime()));
+        assertFalse(before.isUpToDate(grown));
+
+        assertTrue(grown.delete());
+        assertFalse(before.isUpToDate(grown));
+    }
+
+    @Test
+    public void fileModifiedWithinTheRacyWindowIsHashedAgain() {
+        File file = fileModifiedAgo("one", 0);
+        IndexEntry entry = new IndexEntry(Utils.sha1("one"), file);
+        /* its stat data is unchanged, but it may change again within the
+         * resolution of its mtime */
+        assertFalse(entry.isUpToDate(file));
+        assertFalse(IndexEntry.unstatted(Utils.sha1("one")).isUpToDate(file));
+    }
+
+    @Test
+    public void sameSizeChangeWithinTheSameMtimeIsSeen() {
+        Repository repo = UnitTest.scratchRepository();
+        File file = new File(repo.root, "f.txt");
+        Utils.writeContents(file, "aaaa");
+        repo.add("f.txt");
+        repo.commit("one");
+        long mtime = file.lastModified();
+        /* caches the stat data of f.txt, taken within its racy window */
+        assertTrue(repo.status().modified.isEmpty());
+
+        Utils.writeContents(file, "bbbb");
+        assertTrue(file.setLastModified(mtime));
+        Map<String, String> modified = repo.status().modified;
+        assertEquals("modified", modified.get("f.txt"));
+
+        Utils.writeContents(file, "aaaa");
+        assertTrue(file.setLastModified(mtime));
+        assertTrue(repo.status().modified.isEmpty());
+    }
+
+    @Test
+    public void entriesKeepTheirStatDataWhenWritten() throws IOException {
+        File file = fileModifiedAgo("one", 10);
+        IndexEntry entry = new IndexEntry(Utils.sha1("one"), file);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        entry.write(out);
+        IndexEntry.stat(file).write(out);
+        out.close();
+
+        try (DataInputStream in = Utils.dataInput(bytes.toByteArray())) {
+            IndexEntry read = IndexEntry.read(in);
+            assertEquals(entry.getSha1(), read.getSha1());
+            assertEquals(3, read.getSize());
+            assertEquals(entry.getMtime(), read.getMtime());
+            assertTrue(read.isUpToDate(file));
+            IndexEntry stat = IndexEntry.read(in);
+            assertNull(stat.getSha1());
+            assertTrue(stat.isUpToDate(file));
+        }
+    }
+}
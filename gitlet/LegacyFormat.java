@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+
+/** The commits and state of the original gitlet, which stored both with
+ *  Java serialization: a commit as a Commit holding the blob id of every
+ *  file, named after the SHA-1 of its serialized form, and the state as
+ *  a GTTree holding the staged files whole. Those classes have changed
+ *  since, so such a stream is told apart by the name and
+ *  serialVersionUID of its first class. The original classes did not
+ *  pin theirs, so each later version of them computed another one.
+ *  Such streams are read into OldCommit and OldTree, which have the
+ *  fields and serialVersionUID of the original classes. Only migrate reads them; every other command
+ *  fails with MIGRATE.
+ *  @author Tianyi Xu
+ */
+class LegacyFormat {
+    /** The error of a command on a repository of the original gitlet. */
+    static final String MIGRATE =
+            "Repository written by an older version of gitlet; run gitlet migrate.";
+
+    /** A commit of the original gitlet. */
+    static class OldCommit implements Serializable {
+        private static final long serialVersionUID = -7796419836637832891L;
+
+        String message;
+        Date timestamp;
+        String parent;
+        String parent2;
+        /* number of first parents up to the initial commit */
+        int len;
+        /* file name -> blob id */
+        Map<String, String> blobs;
+    }
+
+    /** The state of a repository of the original gitlet. */
+    static class OldTree implements Serializable {
+        private static final long serialVersionUID = 8678744083171294881L;
+
+        /* the commit of the current branch, which a merge changed after
+         * storing it: only this copy has the second parent */
+        OldCommit _HEAD;
+        String currentBranch;
+        /* file name -> contents */
+        Map<String, byte[]> stagedFiles;
+        Set<String> stagedrmFiles;
+        Map<String, String> branches;
+    }
+
+    /** Return true if STORED is a commit or state of the original
+     *  gitlet. Only the start of the description of its first class is
+     *  read: the stream header, TC_OBJECT, TC_CLASSDESC, the class name
+     *  and its serialVersionUID. */
+    static boolean isOriginal(byte[] stored) {
+        try (DataInputStream in = Utils.dataInput(stored)) {
+            if (in.readShort() != ObjectStreamConstants.STREAM_MAGIC
+                    || in.readShort() != ObjectStreamConstants.STREAM_VERSION
+                    || in.readByte() != ObjectStreamConstants.TC_OBJECT
+                    || in.readByte() != ObjectStreamConstants.TC_CLASSDESC) {
+                return false;
+            }
+            return original(in.readUTF(), in.readLong()) != null;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return the commit of the original gitlet stored as STORED. */
+    static OldCommit readCommit(byte[] stored) {
+        return read(stored, OldCommit.class);
+    }
+
+    /** Return the state of the original gitlet saved as SAVED. */
+    static OldTree readTree(byte[] saved) {
+        return read(saved, OldTree.class);
+    }
+
+    private static <T> T read(byte[] stored, Class<T> expected) {
+        try (Input in = new Input(new ByteArrayInputStream(stored))) {
+            return expected.cast(in.readObject());
+        } catch (IOException | ClassNotFoundException | ClassCastException excp) {
+            throw Utils.error("Corrupted repository state.");
+        }
+    }
+
+    /** Return the class that reads the class NAME with the
+     *  serialVersionUID UID if it is one of the original gitlet, and null
+     *  otherwise. */
+    private static Class<?> original(String name, long uid) {
+        if (name.equals("gitlet.Commit") && uid == OldCommit.serialVersionUID) {
+            return OldCommit.class;
+        } else if (name.equals("gitlet.GTTree") && uid == OldTree.serialVersionUID) {
+            return OldTree.class;
+        }
+        return null;
+    }
+
+    /** A stream that reads the original classes into those above. Their
+     *  fields have the same names and types, so the stream lays out their
+     *  values as it would for the class read in place of the original. */
+    private static class Input extends ObjectInputStream {
+        Input(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+                throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            Class<?> substitute = original(desc.getName(), desc.getSerialVersionUID());
+            return substitute == null ? desc : ObjectStreamClass.lookup(substitute);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+
+/** A diff of two texts line by line, with Myers' O(ND) algorithm in
+ *  linear space: the middle snake of the edit graph splits the problem in
+ *  two, and only the lines each side changes are remembered, one bit per
+ *  line. Equal lines are numbered alike first, so the search compares
+ *  ints. Once a search for a split goes past a cost of 256 it settles
+ *  for the best split found so far, which keeps the time linear in the
+ *  number of lines on very different texts at the price of a diff that
+ *  isn't always the shortest.
+ *  @author Tianyi Xu
+ */
+class LineDiff {
+    /** Receives the changes of a diff of A and B in order. */
+    interface Hunks {
+        /** Lines [ASTART, AEND) of A were replaced by lines [BSTART, BEND)
+         *  of B. The lines between two changes are the same in both. */
+        void hunk(int aStart, int aEnd, int bStart, int bEnd);
+    }
+
+    /** The lines of a text, each with its '\n', if it has one. */
+    static final class Lines {
+        final byte[] text;
+        /* where each line starts, then the length of the text */
+        private final int[] starts;
+        /* the number of each line, the same for equal lines */
+        private final int[] ids;
+
+        private Lines(byte[] text, int[] starts, int[] ids) {
+            this.text = text;
+            this.starts = starts;
+            this.ids = ids;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        /** Return the offset in the text of line I, or of the end of the
+         *  text if I is size(). */
+        int start(int i) {
+            return starts[i];
+        }
+    }
+
+    /** Return the lines of each of TEXTS, numbered so that equal lines
+     *  of any of them have the same number. */
+    static Lines[] split(byte[]... texts) {
+        Interner interner = new Interner();
+        Lines[] result = new Lines[texts.length];
+        for (int t = 0; t < texts.length; t++) {
+            byte[] text = texts[t];
+            int n = 0;
+            for (byte b : text) {
+                if (b == '\n') {
+                    n++;
+                }
+            }
+            if (text.length > 0 && text[text.length - 1] != '\n') {
+                n++;
+            }
+            int[] starts = new int[n + 1];
+            int[] ids = new int[n];
+            int line = 0;
+            for (int i = 0; i < text.length; i++) {
+                if (text[i] == '\n') {
+                    starts[++line] = i + 1;
+                }
+            }
+            starts[n] = text.length;
+            for (int i = 0; i < n; i++) {
+                ids[i] = interner.intern(text, starts[i], starts[i + 1]);
+            }
+            result[t] = new Lines(text, starts, ids);
+        }
+        return result;
+    }
+
+    /** Pass the changes from A to B to HUNKS, in order. A and B must come
+     *  from the same call of split. */
+    static void diff(Lines a, Lines b, Hunks hunks) {
+        int n = a.size();
+        int m = b.size();
+        BitSet deleted = new BitSet(n);
+        BitSet inserted = new BitSet(m);
+        new Myers(a.ids, b.ids, deleted, inserted).run();
+        int i = 0;
+        int j = 0;
+        while (i < n || j < m) {
+            if (i < n && j < m && !deleted.get(i) && !inserted.get(j)) {
+                i++;
+                j++;
+                continue;
+            }
+            int i0 = i;
+            int j0 = j;
+            i = Math.min(deleted.nextClearBit(i), n);
+            j = Math.min(inserted.nextClearBit(j), m);
+            hunks.hunk(i0, i, j0, j);
+        }
+    }
+
+    /** The search for the lines of A deleted and of B inserted. */
+    private static final class Myers {
+        /* cost after which a search settles for the best split so far */
+        private static final int TOO_EXPENSIVE = 256;
+
+        private final int[] a;
+        private final int[] b;
+        private final BitSet deleted;
+        private final BitSet inserted;
+        /* furthest x reached on each diagonal x - y, from the top left and
+         * from the bottom right, indexed by diagonal + offset */
+        private final int[] forward;
+        private final int[] backward;
+        private final int offset;
+        /* the split found by the last call of split */
+        private int xMid;
+        private int yMid;
+
+        Myers(int[] a, int[] b, BitSet deleted, BitSet inserted) {
+            this.a = a;
+            this.b = b;
+            this.deleted = deleted;
+            this.inserted = inserted;
+            int diagonals = a.length + b.length + 3;
+            forward = new int[diagonals];
+            backward = new int[diagonals];
+            offset = b.length + 1;
+        }
+
+        /** Mark the changed lines of every part left to compare, splitting
+         *  the parts that change on both sides in two. */
+        void run() {
+            Deque<int[]> parts = new ArrayDeque<>();
+            parts.push(new int[] {0, a.length, 0, b.length});
+            while (!parts.isEmpty()) {
+                int[] part = parts.pop();
+                int xLo = part[0];
+                int xHi = part[1];
+                int yLo = part[2];
+                int yHi = part[3];
+                while (xLo < xHi && yLo < yHi && a[xLo] == b[yLo]) {
+                    xLo++;
+                    yLo++;
+                }
+                while (xLo < xHi && yLo < yHi && a[xHi - 1] == b[yHi - 1]) {
+                    xHi--;
+                    yHi--;
+                }
+                if (xLo == xHi) {
+                    inserted.set(yLo, yHi);
+                } else if (yLo == yHi) {
+                    deleted.set(xLo, xHi);
+                } else {
+                    split(xLo, xHi, yLo, yHi);
+                    parts.push(new int[] {xMid, xHi, yMid, yHi});
+                    parts.push(new int[] {xLo, xMid, yLo, yMid});
+                }
+            }
+        }
+
+        /** Find a point (xMid, yMid) on a shortest path from (XLO, YLO) to
+         *  (XHI, YHI), or on a short one if that is too expensive, by
+         *  searching from both corners at once until the searches meet. */
+        private void split(int xLo, int xHi, int yLo, int yHi) {
+            int dMin = xLo - yHi;
+            int dMax = xHi - yLo;
+            int fMid = xLo - yLo;
+            int bMid = xHi - yHi;
+            int fMin = fMid;
+            int fMax = fMid;
+            int bMin = bMid;
+            int bMax = bMid;
+            boolean odd = ((fMid - bMid) & 1) != 0;
+            forward[fMid + offset] = xLo;
+            backward[bMid + offset] = xHi;
+
+            for (int cost = 1; ; cost++) {
+                if (fMin > dMin) {
+                    forward[--fMin - 1 + offset] = -1;
+                } else {
+                    fMin++;
+                }
+                if (fMax < dMax) {
+                    forward[++fMax + 1 + offset] = -1;
+                } else {
+                    fMax--;
+                }
+                for (int d = fMax; d >= fMin; d -= 2) {
+                    int lo = forward[d - 1 + offset];
+                    int hi = forward[d + 1 + offset];
+                    int x = lo < hi ? hi : lo + 1;
+                    int y = x - d;
+                    while (x < xHi && y < yHi && a[x] == b[y]) {
+                        x++;
+                        y++;
+                    }
+                    forward[d + offset] = x;
+                    if (odd && bMin <= d && d <= bMax && backward[d + offset] <= x) {
+                        xMid = x;
+                        yMid = y;
+                        return;
+                    }
+                }
+
+                if (bMin > dMin) {
+                    backward[--bMin - 1 + offset] = Integer.MAX_VALUE;
+                } else {
+                    bMin++;
+                }
+                if (bMax < dMax) {
+                    backward[++bMax + 1 + offset] = Integer.MAX_VALUE;
+                } else {
+                    bMax--;
+                }
+                for (int d = bMax; d >= bMin; d -= 2) {
+                    int lo = backward[d - 1 + offset];
+                    int hi = backward[d + 1 + offset];
+                    int x = lo < hi ? lo : hi - 1;
+                    int y = x - d;
+                    while (xLo < x && yLo < y && a[x - 1] == b[y - 1]) {
+                        x--;
+                        y--;
+                    }
+                    backward[d + offset] = x;
+                    if (!odd && fMin <= d && d <= fMax && x <= forward[d + offset]) {
+                        xMid = x;
+                        yMid = y;
+                        return;
+                    }
+                }
+
+                if (cost >= TOO_EXPENSIVE) {
+                    settle(xLo, xHi, yLo, yHi, fMin, fMax, bMin, bMax);
+                    return;
+                }
+            }
+        }
+
+        /** Split at the furthest point either search reached. */
+        private void settle(int xLo, int xHi, int yLo, int yHi,
+                            int fMin, int fMax, int bMin, int bMax) {
+            int fBest = -1;
+            int fX = 0;
+            for (int d = fMax; d >= fMin; d -= 2) {
+                int x = Math.min(forward[d + offset], xHi);
+                int y = x - d;
+                if (yHi < y) {
+                    x = yHi + d;
+                    y = yHi;
+                }
+                if (fBest < x + y) {
+                    fBest = x + y;
+                    fX = x;
+                }
+            }
+            int bBest = Integer.MAX_VALUE;
+            int bX = 0;
+            for (int d = bMax; d >= bMin; d -= 2) {
+                int x = Math.max(xLo, backward[d + offset]);
+                int y = x - d;
+                if (y < yLo) {
+                    x = yLo + d;
+                    y = yLo;
+                }
+                if (x + y < bBest) {
+                    bBest = x + y;
+                    bX = x;
+                }
+            }
+            if ((xHi + yHi) - bBest < fBest - (xLo + yLo)) {
+                xMid = fX;
+                yMid = fBest - fX;
+            } else {
+                xMid = bX;
+                yMid = bBest - bX;
+            }
+        }
+    }
+
+    /** Numbers lines by their contents, without copying them. */
+    private static final class Interner {
+        /* number of each line + 1 by hash, 0 for none */
+        private int[] slots = new int[1 << 10];
+        /* the first line of each number */
+        private byte[][] texts = new byte[1 << 9][];
+        private int[] starts = new int[1 << 9];
+        private int[] ends = new int[1 << 9];
+        private int[] hashes = new int[1 << 9];
+        private int count;
+
+        /** Return the number of the line TEXT[START, END). */
+        int intern(byte[] text, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + text[i];
+            }
+            int mask = slots.length - 1;
+            for (int s = mix(hash) & mask; ; s = (s + 1) & mask) {
+                int id = slots[s] - 1;
+                if (id < 0) {
+                    return add(s, text, start, end, hash);
+                }
+                if (hashes[id] == hash
+                        && Arrays.equals(text, start, end, texts[id], starts[id], ends[id])) {
+                    return id;
+                }
+            }
+        }
+
+        private int add(int slot, byte[] text, int start, int end, int hash) {
+            if (count == texts.length) {
+                texts = Arrays.copyOf(texts, 2 * count);
+                starts = Arrays.copyOf(starts, 2 * count);
+                ends = Arrays.copyOf(ends, 2 * count);
+                hashes = Arrays.copyOf(hashes, 2 * count);
+            }
+            int id = count++;
+            texts[id] = text;
+            starts[id] = start;
+            ends[id] = end;
+            hashes[id] = hash;
+            slots[slot] = id + 1;
+            if (2 * count > slots.length) {
+                slots = new int[2 * slots.length];
+                int mask = slots.length - 1;
+                for (int i = 0; i < count; i++) {
+                    int s = mix(hashes[i]) & mask;
+                    while (slots[s] != 0) {
+                        s = (s + 1) & mask;
+                    }
+                    slots[s] = i + 1;
+                }
+            }
+            return id;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
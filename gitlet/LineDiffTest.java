@@ -0,0 +1,173 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** Tests that line diffs turn one text into the other, and are as short
+ *  as they can be when the texts are close.
+ *  @author Tianyi Xu
+ */
+public class LineDiffTest {
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return the hunks of the diff of A and B. */
+    private static List<int[]> hunks(LineDiff.Lines a, LineDiff.Lines b) {
+        List<int[]> hunks = new ArrayList<>();
+        LineDiff.diff(a, b, (aStart, aEnd, bStart, bEnd) ->
+                hunks.add(new int[] {aStart, aEnd, bStart, bEnd}));
+        return hunks;
+    }
+
+    /** Return the text of B rebuilt from A and the diff of the two, and
+     *  check that the hunks are in order and that the lines between them
+     *  are the same in both. */
+    private static String patch(LineDiff.Lines a, LineDiff.Lines b, List<int[]> hunks) {
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        int j = 0;
+        for (int[] h : hunks) {
+            assertTrue(h[0] >= i && h[2] >= j);
+            assertTrue(h[0] < h[1] || h[2] < h[3]);
+            assertEquals(h[0] - i, h[2] - j);
+            for (; i < h[0]; i++, j++) {
+                assertEquals(line(a, i), line(b, j));
+                result.append(line(a, i));
+            }
+            for (j = h[2]; j < h[3]; j++) {
+                result.append(line(b, j));
+            }
+            i = h[1];
+        }
+        for (; i < a.size(); i++, j++) {
+            assertEquals(line(a, i), line(b, j));
+            result.append(line(a, i));
+        }
+        assertEquals(b.size(), j);
+        return result.toString();
+    }
+
+    private static String line(LineDiff.Lines lines, int i) {
+        return new String(lines.text, lines.start(i), lines.start(i + 1) - lines.start(i),
+                StandardCharsets.UTF_8);
+    }
+
+    /** Return the number of lines deleted and inserted by HUNKS. */
+    private static int cost(List<int[]> hunks) {
+        int cost = 0;
+        for (int[] h : hunks) {
+            cost += (h[1] - h[0]) + (h[3] - h[2]);
+        }
+        return cost;
+    }
+
+    /** Return the fewest lines to delete and insert to turn A into B. */
+    private static int shortestEdit(LineDiff.Lines a, LineDiff.Lines b) {
+        int n = a.size();
+        int m = b.size();
+        int[][] lcs = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                lcs[i][j] = line(a, i).equals(line(b, j)) ? lcs[i + 1][j + 1] + 1
+                        : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+            }
+        }
+        return n + m - 2 * lcs[0][0];
+    }
+
+    private static void check(String a, String b) {
+        LineDiff.Lines[] lines = LineDiff.split(bytes(a), bytes(b));
+        List<int[]> hunks = hunks(lines[0], lines[1]);
+        assertEquals(b, patch(lines[0], lines[1], hunks));
+        assertEquals(a + " -> " + b, shortestEdit(lines[0], lines[1]), cost(hunks));
+    }
+
+    @Test
+    public void smallDiffs() {
+        check("", "");
+        check("", "a\nb\n");
+        check("a\nb\n", "");
+        check("a\nb\nc\n", "a\nb\nc\n");
+        check("a\nb\nc\n", "a\nx\nc\n");
+        check("a\nb\nc\n", "x\na\nb\nc\ny\n");
+        check("a\nb\nc\nd\n", "b\nd\n");
+    }
+
+    @Test
+    public void lastLineWithoutNewline() {
+        check("a\nb", "a\nb\n");
+        check("a\nb\n", "a\nb");
+        check("a", "a\nb");
+    }
+
+    @Test
+    public void equalLinesHaveEqualNumbers() {
+        LineDiff.Lines[] lines = LineDiff.split(bytes("a\nb\na\n"), bytes("b\na\n"));
+        assertEquals(3, lines[0].size());
+        assertEquals(2, lines[1].size());
+        List<int[]> hunks = hunks(lines[0], lines[1]);
+        assertEquals(1, hunks.size());
+        assertEquals(1, cost(hunks));
+    }
+
+    @Test
+    public void randomEditsAreShortest() {
+        Random random = new Random(61);
+        for (int round = 0; round < 300; round++) {
+            String a = randomText(random, random.nextInt(40));
+            String b = edit(random, a);
+            check(a, b);
+        }
+    }
+
+    @Test
+    public void veryDifferentTextsStillRebuild() {
+        Random random = new Random(7);
+        String a = randomText(random, 3000);
+        String b = randomText(random, 3000);
+        LineDiff.Lines[] lines = LineDiff.split(bytes(a), bytes(b));
+        assertEquals(b, patch(lines[0], lines[1], hunks(lines[0], lines[1])));
+    }
+
+    /** Return N lines drawn from a few, so that many repeat. */
+    private static String randomText(Random random, int n) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            text.append((char) ('a' + random.nextInt(6))).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Return TEXT with a few lines deleted, inserted or changed. */
+    private static String edit(Random random, String text) {
+        List<String> lines = new ArrayList<>(List.of(text.split("(?<=\n)")));
+        lines.remove("");
+        for (int k = random.nextInt(6); k > 0; k--) {
+            int at = random.nextInt(lines.size() + 1);
+            String line = (char) ('a' + random.nextInt(8)) + "\n";
+            switch (random.nextInt(3)) {
+            case 0:
+                lines.add(at, line);
+                break;
+            case 1:
+                if (at < lines.size()) {
+                    lines.remove(at);
+                }
+                break;
+            default:
+                if (at < lines.size()) {
+                    lines.set(at, line);
+                }
+            }
+        }
+        return String.join("", lines);
+    }
+}
@@ -1,41 +1,48 @@
 package gitlet;
 
 import java.io.File;
-import java.io.Reader;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
+ *  Each command is an operation of the Repository in the working
+ *  directory, whose results and errors are printed here.
  *  @author Tianyi Xu
  */
 public class Main {
-    static final File CWD = GTTree.CWD;
-    static final File REPO_DIR = GTTree.REPO_DIR;
-    static final File COMMITS_DIR = GTTree.COMMITS_DIR;
-    static final File BLOBS_DIR = GTTree.BLOBS_DIR;
-    public static GTTree gtTree;
+    static final File CWD = new File(System.getProperty("user.dir"));
+    /* The repository in the working directory, kept between the commands
+     * the server runs */
+    static Repository repository;
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) {
-        File gtFile = GTTree.GIT_TREE;
         if (args.length == 0) {
             Utils.message("Please enter a command.");
-            System.exit(0);
+            exit(0);
+        }
+        if (repository == null) {
+            repository = new Repository(CWD);
+        }
+
+        /* Print the cache counters when run with -Dgitlet.stats=true */
+        if (Boolean.getBoolean("gitlet.stats") && !Server.isServing()) {
+            Repository repo = repository;
+            Runtime.getRuntime().addShutdownHook(
+                    new Thread(() -> System.err.println(repo.cache)));
         }
 
-        if (args[0].equals("init")) {
-            if (gtFile.exists()) {
-                Utils.message("Gitlet version-control system already exists in the current directory.");
-            } else {
+        try {
+            if (args[0].equals("init")) {
                 init();
+                return;
             }
-        } else {
-            if (!gtFile.exists()) {
+            if (!repository.exists()) {
                 Utils.message("Not in an initialized Gitlet directory.");
-                System.exit(0);
+                exit(0);
             }
-            /* Read gtTree from saved file */
-            gtTree = GTTree.readTree();
             switch(args[0]) {
                 case "add" :
                     add(args);
@@ -58,6 +65,9 @@ public class Main {
                 case "status":
                     status(args);
                     break;
+                case "diff":
+                    diff(args);
+                    break;
                 case "log":
                     log(args);
                     break;
@@ -73,113 +83,210 @@ public class Main {
                 case "reset":
                     reset(args);
                     break;
+                case "migrate":
+                    migrate(args);
+                    break;
+                case "gc":
+                    gc(args);
+                    break;
                 default:
                     Utils.message("No command with that name exists.");
-                    System.exit(0);
+                    exit(0);
             }
-            gtTree.saveTree();
+        } catch (GitletException excp) {
+            Utils.message(excp.getMessage());
+            exit(0);
         }
+    }
 
-
-
+    /** Exit with STATUS, or only end the command when it runs in the
+     *  server. */
+    static void exit(int status) {
+        if (Server.isServing()) {
+            throw new Server.Exit(status);
+        }
+        System.exit(status);
     }
 
     public static void init(){
-        GTTree gtTree = new GTTree();
-        gtTree.init();
-        gtTree.saveTree();
+        repository = Repository.init(CWD);
     }
 
     public static void add(String... args) {
-        for (int i = 1; i < args.length; i++) {
-            gtTree.add(args[i]);
-        }
+        repository.add(Arrays.copyOfRange(args, 1, args.length));
     }
 
     public static void commit(String... args) {
         if (args.length == 1 || args[1].length() == 0) {
             Utils.message("Please enter a commit message.");
-            System.exit(0);
+            exit(0);
         } else if (args.length > 2) {
             Utils.message("Please enter a commit message.");
         }
-        gtTree.commit(args[1]);
+        repository.commit(args[1]);
     }
 
     public static void checkout(String... args) {
         if (args.length == 1) {
             Utils.message("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         } else if (args.length == 2) {
-            gtTree.checkOutBranch(args[1]);
+            repository.checkout(args[1]);
         } else if (args.length == 3 && args[1].equals("--")) {
-            gtTree.checkOut(args[2]);
+            repository.checkoutFile(args[2]);
         } else if (args.length == 4 && args[2].equals("--")) {
-            gtTree.checkOut(args[3], args[1]);
+            repository.checkoutFile(args[1], args[3]);
         } else {
             Utils.message("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
     }
 
     public static void find(String... args) {
         if (args.length == 1 || args.length > 2) {
             Utils.message("Incorrect operands.");
-            System.exit(0);
+            exit(0);
+        }
+        List<String> found = repository.find(args[1]);
+        for (String commitID : found) {
+            System.out.println(commitID);
+        }
+        if (found.isEmpty()) {
+            Utils.message("Found no commit with that message.");
         }
-        gtTree.find(args[1]);
     }
 
     public static void merge(String... args) {
         if (args.length == 1 || args.length > 2) {
             Utils.message("Incorrect operands.");
-            System.exit(0);
+            exit(0);
+        }
+        switch (repository.merge(args[1])) {
+            case FAST_FORWARD:
+                Utils.message("Current branch fast-forwarded.");
+                break;
+            case CONFLICT:
+                Utils.message("Encountered a merge conflict.");
+                break;
+            default:
+                break;
         }
-        gtTree.merge(args[1]);
     }
 
     public static void branch(String... args) {
         if (args.length == 1 || args.length > 2) {
             Utils.message("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
-        gtTree.branch(args[1]);
+        repository.branch(args[1]);
     }
 
     public static void rmBranch(String... args) {
         if (args.length == 1 || args.length > 2) {
             Utils.message("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
-        gtTree.rmBranch(args[1]);
+        repository.rmBranch(args[1]);
     }
 
     public static void rm(String... args) {
         if (args.length == 1 || args.length > 2) {
             Utils.message("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
-        gtTree.rmFile(args[1]);
+        repository.rm(args[1]);
     }
 
     public static void reset(String... args) {
         if (args.length == 1 || args.length > 2) {
             Utils.message("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
-        gtTree.reset(args[1]);
+        repository.reset(args[1]);
     }
 
 
+    public static void migrate(String... args) {
+        if (args.length > 1) {
+            Utils.message("Incorrect operands.");
+            exit(0);
+        }
+        Utils.message(repository.migrate());
+    }
+
+
+    public static void gc(String... args) {
+        if (args.length > 1) {
+            Utils.message("Incorrect operands.");
+            exit(0);
+        }
+        Utils.message(repository.gc());
+    }
+
     public static void log(String... args) {
-        gtTree.log();
+        for (Commit c : repository.log()) {
+            System.out.println(c.toString());
+        }
     }
     public static void globalLog(String... args) {
-        gtTree.globalLog();
+        for (String entry : repository.globalLog()) {
+            System.out.println(entry);
+        }
     }
 
     public static void status(String... args) {
-        gtTree.status();
+        Repository.Status status = repository.status();
+        statusHead("Branches");
+        for (String branchName : status.branches) {
+            if (branchName.equals(status.currentBranch)) {
+                System.out.print("*");
+            }
+            System.out.println(branchName);
+        }
+        System.out.println();
+
+        statusHead("Staged Files");
+        for (String fileName : status.staged) {
+            System.out.println(fileName);
+        }
+        System.out.println();
+
+        statusHead("Removed Files");
+        for (String fileName : status.removed) {
+            System.out.println(fileName);
+        }
+        System.out.println();
+
+        statusHead("Modifications Not Staged For Commit");
+        for (Map.Entry<String, String> modified : status.modified.entrySet()) {
+            System.out.println(modified.getKey() + " (" + modified.getValue() + ")");
+        }
+        System.out.println();
+
+        statusHead("Untracked Files");
+        for (String fileName : status.untracked) {
+            System.out.println(fileName);
+        }
+        System.out.println();
+    }
+
+    private static void statusHead(String head) {
+        System.out.printf("=== %s ===", head);
+        System.out.println();
+    }
+
+    /** java gitlet.Main diff [--staged | COMMIT COMMIT] */
+    public static void diff(String... args) {
+        if (args.length == 1) {
+            repository.diff(System.out);
+        } else if (args.length == 2 && args[1].equals("--staged")) {
+            repository.diffStaged(System.out);
+        } else if (args.length == 3) {
+            repository.diff(args[1], args[2], System.out);
+        } else {
+            Utils.message("Incorrect operands.");
+            exit(0);
+        }
     }
 
 
@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/** Finds the split point of two commits: a common ancestor that is not
+ *  an ancestor of any other common ancestor. Both parents of merge
+ *  commits are followed.
+ *
+ *  The walk pops commits from a priority queue in decreasing generation
+ *  number, painting each with the sides it is reachable from. A commit
+ *  can only be an ancestor of commits with a larger generation number,
+ *  so the first commit found reachable from both sides is a best common
+ *  ancestor and the walk stops there, visiting no commit older than it.
+ *  @author Tianyi Xu
+ */
+class MergeBase {
+    /** The commit history the walk runs over. */
+    interface History {
+        /** Return the ids of the parents of COMMITID, first parent first. */
+        List<String> parents(String commitId);
+
+        /** Return the generation number of COMMITID: 0 for a root commit,
+         *  and one more than the largest of its parents' otherwise. */
+        int generation(String commitId);
+    }
+
+    /** The history of the commits of the current repository, read from
+     *  the commit graph without loading any commit. */
+    static final History COMMITS = new History() {
+        @Override
+        public List<String> parents(String commitId) {
+            CommitGraph graph = Repository.current().graph;
+            List<String> parents = new ArrayList<>(2);
+            for (int pos : graph.parents(graph.position(commitId))) {
+                parents.add(graph.id(pos));
+            }
+            return parents;
+        }
+
+        @Override
+        public int generation(String commitId) {
+            CommitGraph graph = Repository.current().graph;
+            return graph.generation(graph.position(commitId));
+        }
+    };
+
+    /* Paint flags */
+    private static final int FROM_A = 1;
+    private static final int FROM_B = 2;
+
+    /** A commit waiting in the queue. */
+    private static class Item implements Comparable<Item> {
+        final String id;
+        final int generation;
+
+        Item(String id, int generation) {
+            this.id = id;
+            this.generation = generation;
+        }
+
+        @Override
+        public int compareTo(Item other) {
+            return Integer.compare(other.generation, generation);
+        }
+    }
+
+    /** Return the id of a best common ancestor of the commits A and B in
+     *  HISTORY, or null if they have none. */
+    static String find(History history, String a, String b) {
+        if (a.equals(b)) {
+            return a;
+        }
+        Map<String, Integer> paint = new HashMap<>();
+        PriorityQueue<Item> queue = new PriorityQueue<>();
+        paint.put(a, FROM_A);
+        paint.put(b, FROM_B);
+        queue.add(new Item(a, history.generation(a)));
+        queue.add(new Item(b, history.generation(b)));
+
+        while (!queue.isEmpty()) {
+            String id = queue.poll().id;
+            int flags = paint.get(id);
+            if (flags == (FROM_A | FROM_B)) {
+                return id;
+            }
+            for (String parent : history.parents(id)) {
+                int old = paint.getOrDefault(parent, 0);
+                if ((old | flags) != old) {
+                    /* a commit already queued is queued again with its new
+                     * paint, the stale copy only repeats the same work */
+                    paint.put(parent, old | flags);
+                    queue.add(new Item(parent, history.generation(parent)));
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,104 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Benchmark of MergeBase on a synthetic in-memory history.  Usage:
+ *      java gitlet.MergeBaseBenchmark [COMMITS [QUERIES [BRANCHES]]]
+ *  The history has BRANCHES lines of development (default 8) that commit
+ *  in random order and now and then merge one another, which gives many
+ *  criss-cross merges. COMMITS defaults to 100000 and QUERIES to 1000.
+ *  @author Tianyi Xu
+ */
+public class MergeBaseBenchmark {
+
+    /** An in-memory history whose commit ids are "c" + index. */
+    private static class SyntheticHistory implements MergeBase.History {
+        final int[] parent1;
+        final int[] parent2;
+        final int[] generation;
+        long visited;
+
+        SyntheticHistory(int n) {
+            parent1 = new int[n];
+            parent2 = new int[n];
+            generation = new int[n];
+        }
+
+        @Override
+        public List<String> parents(String commitId) {
+            visited++;
+            int i = index(commitId);
+            if (parent1[i] < 0) {
+                return Collections.emptyList();
+            } else if (parent2[i] < 0) {
+                return Collections.singletonList("c" + parent1[i]);
+            }
+            return Arrays.asList("c" + parent1[i], "c" + parent2[i]);
+        }
+
+        @Override
+        public int generation(String commitId) {
+            return generation[index(commitId)];
+        }
+
+        private static int index(String commitId) {
+            return Integer.parseInt(commitId.substring(1));
+        }
+    }
+
+    public static void main(String... args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int branches = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        Random random = new Random(61);
+
+        long start = System.nanoTime();
+        SyntheticHistory history = new SyntheticHistory(n);
+        int[] tips = new int[branches];
+        history.parent1[0] = -1;
+        history.parent2[0] = -1;
+        for (int i = 1; i < n; i++) {
+            int b = random.nextInt(branches);
+            history.parent1[i] = tips[b];
+            history.parent2[i] = -1;
+            if (random.nextInt(10) == 0) {
+                int other = tips[random.nextInt(branches)];
+                if (other != tips[b]) {
+                    history.parent2[i] = other;
+                }
+            }
+            history.generation[i] = history.generation[history.parent1[i]] + 1;
+            if (history.parent2[i] >= 0) {
+                history.generation[i] = Math.max(history.generation[i],
+                        history.generation[history.parent2[i]] + 1);
+            }
+            tips[b] = i;
+        }
+        System.out.printf("built %d commits on %d branches in %.1f ms%n",
+                n, branches, (System.nanoTime() - start) / 1e6);
+
+        List<String[]> pairs = new ArrayList<>();
+        for (int q = 0; q < queries; q++) {
+            String a = "c" + tips[random.nextInt(branches)];
+            String b = "c" + (n - 1 - random.nextInt(Math.min(n, 1000)));
+            pairs.add(new String[] {a, b});
+        }
+
+        /* warm up */
+        for (String[] pair : pairs) {
+            MergeBase.find(history, pair[0], pair[1]);
+        }
+        history.visited = 0;
+        start = System.nanoTime();
+        for (String[] pair : pairs) {
+            MergeBase.find(history, pair[0], pair[1]);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%d merge bases in %.1f ms: %.3f ms and %.1f commits visited per query%n",
+                queries, elapsed, elapsed / queries, (double) history.visited / queries);
+    }
+}
@@ -0,0 +1,137 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/** Tests of MergeBase on small in-memory histories.
+ *  @author Tianyi Xu
+ */
+public class MergeBaseTest {
+
+    /** A history built commit by commit, parents first. */
+    private static class Graph implements MergeBase.History {
+        private final Map<String, List<String>> parents = new HashMap<>();
+        private final Map<String, Integer> generations = new HashMap<>();
+
+        /** Add the commit ID with PARENTS, which must already be added. */
+        Graph add(String id, String... parents) {
+            int generation = 0;
+            for (String parent : parents) {
+                generation = Math.max(generation, generations.get(parent) + 1);
+            }
+            this.parents.put(id, Arrays.asList(parents));
+            generations.put(id, generation);
+            return this;
+        }
+
+        @Override
+        public List<String> parents(String commitId) {
+            return parents.get(commitId);
+        }
+
+        @Override
+        public int generation(String commitId) {
+            return generations.get(commitId);
+        }
+
+        /** Return ID and all of its ancestors. */
+        Set<String> ancestors(String id) {
+            Set<String> result = new HashSet<>();
+            List<String> stack = new ArrayList<>(List.of(id));
+            while (!stack.isEmpty()) {
+                String c = stack.remove(stack.size() - 1);
+                if (result.add(c)) {
+                    stack.addAll(parents.get(c));
+                }
+            }
+            return result;
+        }
+    }
+
+    @Test
+    public void linearHistory() {
+        Graph g = new Graph().add("r").add("a", "r").add("b", "a").add("c", "b");
+        assertEquals("b", MergeBase.find(g, "b", "c"));
+        assertEquals("b", MergeBase.find(g, "c", "b"));
+        assertEquals("c", MergeBase.find(g, "c", "c"));
+    }
+
+    @Test
+    public void forkedHistory() {
+        Graph g = new Graph().add("r").add("s", "r").add("a1", "s").add("a2", "a1")
+                .add("b1", "s");
+        assertEquals("s", MergeBase.find(g, "a2", "b1"));
+    }
+
+    @Test
+    public void unrelatedHistories() {
+        Graph g = new Graph().add("r1").add("a", "r1").add("r2").add("b", "r2");
+        assertNull(MergeBase.find(g, "a", "b"));
+    }
+
+    @Test
+    public void mergedBranchSplitsAtTheMergedCommit() {
+        /* b was merged into a, so the split point moves up to b1 */
+        Graph g = new Graph().add("r").add("a1", "r").add("b1", "r")
+                .add("m", "a1", "b1").add("a2", "m").add("b2", "b1");
+        assertEquals("b1", MergeBase.find(g, "a2", "b2"));
+    }
+
+    @Test
+    public void crissCrossMerge() {
+        /* each side merged the other, so a1 and b1 are both best common
+         * ancestors and the root is not */
+        Graph g = new Graph().add("r").add("a1", "r").add("b1", "r")
+                .add("a2", "a1", "b1").add("b2", "b1", "a1")
+                .add("a3", "a2").add("b3", "b2");
+        String base = MergeBase.find(g, "a3", "b3");
+        assertTrue(base, base.equals("a1") || base.equals("b1"));
+    }
+
+    @Test
+    public void randomHistoriesGiveBestCommonAncestors() {
+        Random random = new Random(61);
+        for (int round = 0; round < 50; round++) {
+            Graph g = new Graph().add("c0");
+            int n = 2 + random.nextInt(60);
+            for (int i = 1; i < n; i++) {
+                String p1 = "c" + random.nextInt(i);
+                if (random.nextInt(3) == 0) {
+                    String p2 = "c" + random.nextInt(i);
+                    g.add("c" + i, p1, p2);
+                } else {
+                    g.add("c" + i, p1);
+                }
+            }
+            for (int q = 0; q < 20; q++) {
+                String a = "c" + random.nextInt(n);
+                String b = "c" + random.nextInt(n);
+                checkBest(g, a, b, MergeBase.find(g, a, b));
+            }
+        }
+    }
+
+    /** Check that BASE is a common ancestor of A and B in G that is not a
+     *  proper ancestor of another common ancestor. */
+    private static void checkBest(Graph g, String a, String b, String base) {
+        Set<String> common = g.ancestors(a);
+        common.retainAll(g.ancestors(b));
+        assertTrue(a + " " + b + " -> " + base, common.contains(base));
+        for (String other : common) {
+            if (!other.equals(base)) {
+                assertFalse(a + " " + b + " -> " + base + " below " + other,
+                        g.ancestors(other).contains(base));
+            }
+        }
+    }
+}
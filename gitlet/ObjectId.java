@@ -0,0 +1,108 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+
+/** The 20 bytes of a SHA-1 object id, held in three primitive fields, as
+ *  a compact key of maps and sets of ids. A String id takes some 100
+ *  bytes and hashes all its 40 characters; an ObjectId takes 32 and
+ *  hashes in a few operations. Ids compare in the order of their hex
+ *  numerals.
+ *  @author Tianyi Xu
+ */
+final class ObjectId implements Comparable<ObjectId> {
+    /** Number of bytes of an id. */
+    static final int BYTES = Utils.UID_LENGTH / 2;
+
+    /* bytes 0-7, 8-15 and 16-19 of the id, big endian */
+    private final long high;
+    private final long middle;
+    private final int low;
+
+    private ObjectId(long high, long middle, int low) {
+        this.high = high;
+        this.middle = middle;
+        this.low = low;
+    }
+
+    /** Return the id whose hex numeral is HEX. */
+    static ObjectId fromHex(String hex) {
+        if (hex.length() != Utils.UID_LENGTH) {
+            throw new IllegalArgumentException("not an object id: " + hex);
+        }
+        return new ObjectId(parseHex(hex, 0, 16), parseHex(hex, 16, 32),
+                (int) parseHex(hex, 32, 40));
+    }
+
+    /** Return the id whose bytes are BYTES. */
+    static ObjectId of(byte[] bytes) {
+        return read(ByteBuffer.wrap(bytes), 0);
+    }
+
+    /** Return the id whose bytes start at OFFSET of BUFFER. */
+    static ObjectId read(ByteBuffer buffer, int offset) {
+        return new ObjectId(buffer.getLong(offset), buffer.getLong(offset + 8),
+                buffer.getInt(offset + 16));
+    }
+
+    /** Return the bytes of this id. */
+    byte[] toBytes() {
+        return ByteBuffer.allocate(BYTES).putLong(high).putLong(middle).putInt(low).array();
+    }
+
+    /** Compare this id with the one whose bytes start at OFFSET of BUFFER. */
+    int compareTo(ByteBuffer buffer, int offset) {
+        int cmp = Long.compareUnsigned(high, buffer.getLong(offset));
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(middle, buffer.getLong(offset + 8));
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(low, buffer.getInt(offset + 16));
+        }
+        return cmp;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int cmp = Long.compareUnsigned(high, other.high);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(middle, other.middle);
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(low, other.low);
+        }
+        return cmp;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return high == other.high && middle == other.middle && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        /* the bytes of a SHA-1 are already well mixed */
+        return (int) high;
+    }
+
+    /** Return the hex numeral of this id. */
+    @Override
+    public String toString() {
+        return Utils.toHex(toBytes());
+    }
+
+    private static long parseHex(String hex, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("not an object id: " + hex);
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,75 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** Tests of ObjectId against the hex ids it stands for.
+ *  @author Tianyi Xu
+ */
+public class ObjectIdTest {
+
+    /** Return a random id of RANDOM, as hex. */
+    private static String randomHex(Random random) {
+        byte[] bytes = new byte[ObjectId.BYTES];
+        random.nextBytes(bytes);
+        return Utils.toHex(bytes);
+    }
+
+    @Test
+    public void hexAndBytesRoundTrip() {
+        Random random = new Random(61);
+        for (int i = 0; i < 1000; i++) {
+            String hex = randomHex(random);
+            ObjectId id = ObjectId.fromHex(hex);
+            assertEquals(hex, id.toString());
+            assertArrayEquals(Utils.fromHex(hex), id.toBytes());
+            assertEquals(id, ObjectId.of(id.toBytes()));
+            assertEquals(id.hashCode(), ObjectId.of(id.toBytes()).hashCode());
+        }
+    }
+
+    @Test
+    public void orderIsThatOfTheHexNumerals() {
+        Random random = new Random(7);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + ObjectId.BYTES);
+        for (int i = 0; i < 1000; i++) {
+            String a = randomHex(random);
+            /* often share a prefix, so every field gets compared */
+            String b = i % 3 == 0 ? randomHex(random)
+                    : a.substring(0, 8 * (i % 5)) + randomHex(random).substring(8 * (i % 5));
+            int expected = Integer.signum(a.compareTo(b));
+            ObjectId x = ObjectId.fromHex(a);
+            ObjectId y = ObjectId.fromHex(b);
+            assertEquals(a + " " + b, expected, Integer.signum(x.compareTo(y)));
+            assertEquals(expected == 0, x.equals(y));
+
+            buffer.position(1);
+            buffer.put(y.toBytes());
+            assertEquals(expected, Integer.signum(x.compareTo(buffer, 1)));
+            assertEquals(y, ObjectId.read(buffer, 1));
+        }
+    }
+
+    @Test
+    public void extremeIds() {
+        String zeros = "0".repeat(Utils.UID_LENGTH);
+        String ones = "f".repeat(Utils.UID_LENGTH);
+        assertTrue(ObjectId.fromHex(zeros).compareTo(ObjectId.fromHex(ones)) < 0);
+        assertEquals(ones, ObjectId.fromHex(ones).toString());
+        assertEquals(zeros, ObjectId.fromHex(zeros).toString());
+    }
+
+    @Test
+    public void wrongLengthIsRejected() {
+        try {
+            ObjectId.fromHex("abc");
+            fail("accepted a short id");
+        } catch (IllegalArgumentException excp) {
+            assertTrue(excp.getMessage().contains("abc"));
+        }
+    }
+}
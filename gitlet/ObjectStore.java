@@ -0,0 +1,320 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/** A directory of content addressed objects. Objects are fanned out
+ *  into subdirectories named by the first two hex digits of their id,
+ *  e.g. blobs/ab/cdef..., so no single directory grows too large.
+ *  Objects that gc moved into the pack file are read from there.
+ *
+ *  Loose objects are deflated at the level given by -Dgitlet.compression
+ *  (0 writes them uncompressed) and start with a short marker, so that
+ *  objects written before compression are still read as they are.
+ *  Files of at least -Dgitlet.bigFileThreshold bytes (16 MiB by default)
+ *  are stored uncompressed, are never packed, and are copied to and from
+ *  working files without being held in memory.
+ *  @author Tianyi Xu
+ */
+class ObjectStore {
+    /* Number of leading id characters used as the subdirectory name */
+    private static final int FANOUT = 2;
+    /* Starts every deflated loose object */
+    private static final byte[] DEFLATED = {'g', 'l', 'z', 0};
+    /* Deflate level of new loose objects */
+    private static final int LEVEL = Integer.getInteger("gitlet.compression", 6);
+    /* A deflater per thread, reset after each object it compresses; a new
+     * one costs more than deflating a small object */
+    private static final ThreadLocal<Deflater> DEFLATER =
+        ThreadLocal.withInitial(() -> new Deflater(LEVEL));
+    /** Size from which files are stored uncompressed and streamed. */
+    static final long BIG_FILE = Long.getLong("gitlet.bigFileThreshold", 16 << 20);
+
+    /* The top level directory of the store */
+    private final File dir;
+    /* The pack shared by all the stores of the repository */
+    private final PackFile pack;
+    /* The type of the objects of this store in the pack */
+    private final byte type;
+
+    ObjectStore(File dir, PackFile pack, byte type) {
+        this.dir = dir;
+        this.pack = pack;
+        this.type = type;
+    }
+
+    /** Return the file holding the loose object ID. */
+    File file(String id) {
+        return Utils.join(dir, id.substring(0, FANOUT), id.substring(FANOUT));
+    }
+
+    boolean contains(String id) {
+        return file(id).isFile() || pack.contains(id, type);
+    }
+
+    /** Return the contents of the object ID. */
+    byte[] read(String id) {
+        File f = file(id);
+        if (!f.isFile() && pack.contains(id, type)) {
+            return pack.read(id);
+        }
+        return inflate(Utils.readContents(f));
+    }
+
+    /** Store CONTENTS as the object ID, unless it is already stored. */
+    void write(String id, Object... contents) {
+        if (contains(id)) {
+            return;
+        }
+        replace(id, contents);
+    }
+
+    /** Store the contents of FILE as an object, unless it is already
+     *  stored, and return its id. The file is read once, piece by piece,
+     *  and hashed while it is copied, so the id is that of what is stored
+     *  even if the file changes meanwhile. */
+    String writeFile(File file) {
+        MessageDigest md = Utils.digest();
+        File tmp = Utils.tempFile(dir, "new.");
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            long size = in.size();
+            if (size >= BIG_FILE) {
+                try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    for (long pos = 0; pos < size; pos += Utils.MAP_CHUNK) {
+                        ByteBuffer chunk = in.map(FileChannel.MapMode.READ_ONLY, pos,
+                                Math.min(Utils.MAP_CHUNK, size - pos));
+                        md.update(chunk.duplicate());
+                        while (chunk.hasRemaining()) {
+                            out.write(chunk);
+                        }
+                    }
+                }
+            } else {
+                Deflater deflater = LEVEL == 0 ? null : DEFLATER.get();
+                try (OutputStream out = new BufferedOutputStream(
+                        Files.newOutputStream(tmp.toPath()))) {
+                    OutputStream body = out;
+                    if (deflater != null) {
+                        out.write(DEFLATED);
+                        body = new DeflaterOutputStream(out, deflater);
+                    }
+                    ByteBuffer buffer = Utils.IO_BUFFER.get();
+                    buffer.clear();
+                    for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                        md.update(buffer.array(), 0, n);
+                        body.write(buffer.array(), 0, n);
+                        buffer.clear();
+                    }
+                    if (deflater != null) {
+                        ((DeflaterOutputStream) body).finish();
+                    }
+                } finally {
+                    if (deflater != null) {
+                        deflater.reset();
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String id = Utils.toHex(md.digest());
+        if (contains(id)) {
+            tmp.delete();
+        } else {
+            install(tmp, file(id));
+        }
+        return id;
+    }
+
+    /** Write the contents of the object ID to the file TARGET. A big
+     *  object is copied by the file system, without passing through
+     *  memory; any other is smaller than BIG_FILE. */
+    void copyTo(String id, File target) {
+        File f = file(id);
+        if (f.isFile() && f.length() >= BIG_FILE && !isDeflated(f)) {
+            try (FileChannel in = FileChannel.open(f.toPath());
+                 FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                for (long pos = 0; pos < size; ) {
+                    pos += in.transferTo(pos, size - pos, out);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return;
+        }
+        Utils.writeContents(target, (Object) read(id));
+    }
+
+    /** Return true if the object ID is a loose object of at least
+     *  BIG_FILE bytes, which gc leaves out of the pack. */
+    boolean isBig(String id) {
+        return file(id).length() >= BIG_FILE;
+    }
+
+    /** Store CONTENTS as the loose object ID, in place of what is stored
+     *  as ID so far, loose or packed. Only for rewriting an object in a
+     *  new encoding, its contents must stay the same. */
+    void replace(String id, Object... contents) {
+        File f = file(id);
+        f.getParentFile().mkdir();
+        /* Write a temporary file and rename it, so that an object is never
+         * seen half written, even when two threads or processes store the
+         * same object */
+        File tmp = Utils.tempFile(f.getParentFile(), "new.");
+        if (LEVEL == 0) {
+            Utils.writeContents(tmp, contents);
+        } else {
+            Deflater deflater = DEFLATER.get();
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()))) {
+                out.write(DEFLATED);
+                DeflaterOutputStream zout = new DeflaterOutputStream(out, deflater);
+                for (Object obj : contents) {
+                    if (obj instanceof byte[]) {
+                        zout.write((byte[]) obj);
+                    } else {
+                        zout.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                zout.finish();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            } finally {
+                deflater.reset();
+            }
+        }
+        install(tmp, f);
+    }
+
+    /** Rename the complete object TMP to F. */
+    private static void install(File tmp, File f) {
+        f.getParentFile().mkdir();
+        try {
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true if the loose object F starts with the marker of
+     *  deflated objects. */
+    private static boolean isDeflated(File f) {
+        byte[] start = new byte[DEFLATED.length];
+        try (InputStream in = Files.newInputStream(f.toPath())) {
+            return in.readNBytes(start, 0, start.length) == start.length
+                    && Arrays.equals(start, DEFLATED);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the contents of the loose object whose file holds RAW,
+     *  which is either deflated or, for old objects, the contents
+     *  themselves. */
+    private static byte[] inflate(byte[] raw) {
+        if (raw.length < DEFLATED.length
+                || !Arrays.equals(raw, 0, DEFLATED.length, DEFLATED, 0, DEFLATED.length)) {
+            return raw;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(raw, DEFLATED.length, raw.length - DEFLATED.length);
+            /* three times the deflated size, which overflows an int for big objects */
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    (int) Math.min(Integer.MAX_VALUE - 8, raw.length * 3L));
+            byte[] buf = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return raw;
+                }
+                out.write(buf, 0, n);
+            }
+            /* a plain file that happens to start with the marker */
+            if (inflater.getRemaining() != 0) {
+                return raw;
+            }
+            return out.toByteArray();
+        } catch (DataFormatException excp) {
+            return raw;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Return the ids of all the objects in sorted order. */
+    List<String> ids() {
+        TreeSet<String> result = new TreeSet<>(looseIds());
+        result.addAll(pack.ids(type));
+        return new ArrayList<>(result);
+    }
+
+    /** Return the ids of the objects not in the pack, in sorted order. */
+    List<String> looseIds() {
+        List<String> result = new ArrayList<>();
+        List<String> buckets = Utils.directoriesIn(dir);
+        if (buckets == null) {
+            return result;
+        }
+        for (String bucket : buckets) {
+            for (String rest : Utils.plainFilenamesIn(Utils.join(dir, bucket))) {
+                if (rest.length() == Utils.UID_LENGTH - FANOUT) {
+                    result.add(bucket + rest);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Delete the loose objects that are also in the pack. */
+    void pruneLoose() {
+        for (String id : looseIds()) {
+            if (pack.contains(id, type)) {
+                File f = file(id);
+                f.delete();
+                f.getParentFile().delete();
+            }
+        }
+    }
+
+    /** Move the objects of a store written with the old flat layout into
+     *  their subdirectories. Return the number of objects moved. */
+    int migrate() {
+        int moved = 0;
+        for (String name : Utils.plainFilenamesIn(dir)) {
+            if (name.length() != Utils.UID_LENGTH) {
+                continue;
+            }
+            File f = file(name);
+            f.getParentFile().mkdir();
+            if (!Utils.join(dir, name).renameTo(f)) {
+                throw Utils.error("Cannot move object %s.", name);
+            }
+            moved++;
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,148 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** Tests of the loose objects of a store, deflated or, as they were
+ *  written before compression and as big files still are, holding their
+ *  contents as they are. The Makefile lowers gitlet.bigFileThreshold so
+ *  that big files are quick to write.
+ *  @author Tianyi Xu
+ */
+public class ObjectStoreTest {
+
+    /** Replace the loose object ID of STORE by a file holding its
+     *  contents uncompressed, and return them. */
+    private static byte[] uncompress(ObjectStore store, String id) {
+        byte[] contents = store.read(id);
+        File file = store.file(id);
+        assertFalse(Arrays.equals(contents, Utils.readContents(file)));
+        Utils.writeContents(file, (Object) contents);
+        return contents;
+    }
+
+    @Test
+    public void objectsWrittenBeforeCompressionAreRead() {
+        Repository repo = UnitTest.scratchRepository();
+        Utils.writeContents(new File(repo.root, "f.txt"), "one\n");
+        repo.add("f.txt");
+        String id = repo.commit("one");
+        String blob = Utils.sha1("one\n");
+        byte[] contents = uncompress(repo.blobs, blob);
+        byte[] commit = uncompress(repo.commits, id);
+
+        /* read anew, without the commits cached by the instance that wrote them */
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        assertArrayEquals(contents, reopened.blobs.read(blob));
+        assertArrayEquals(commit, reopened.commits.read(id));
+        Commit read = Commit.readCommit(id);
+        assertEquals("one", read.getMessage());
+        assertEquals(blob, read.getBlobs().get("f.txt"));
+
+        Utils.writeContents(new File(repo.root, "f.txt"), "two\n");
+        reopened.checkoutFile("f.txt");
+        assertEquals("one\n", Utils.readContentsAsString(new File(repo.root, "f.txt")));
+        assertEquals(id, reopened.log().get(0).getID());
+    }
+
+    @Test
+    public void plainContentsThatStartLikeADeflatedObject() {
+        Repository repo = UnitTest.scratchRepository();
+        byte[] contents = "glz\0 is not deflated".getBytes(StandardCharsets.US_ASCII);
+        String id = Utils.sha1((Object) contents);
+        Utils.join(repo.blobsDir, id.substring(0, 2)).mkdirs();
+        Utils.writeContents(repo.blobs.file(id), (Object) contents);
+        assertArrayEquals(contents, repo.blobs.read(id));
+
+        /* and written now, they are deflated and read back whole */
+        Repository other = UnitTest.scratchRepository();
+        other.blobs.write(id, (Object) contents);
+        assertFalse(Arrays.equals(contents, Utils.readContents(other.blobs.file(id))));
+        assertArrayEquals(contents, other.blobs.read(id));
+    }
+
+    /** Return the file NAME in DIR holding SIZE bytes, random from SEED
+     *  or, if SEED is 0, compressible. */
+    private static File file(File dir, String name, long size, long seed) {
+        byte[] contents = new byte[Math.toIntExact(size)];
+        if (seed == 0) {
+            for (int i = 0; i < contents.length; i++) {
+                contents[i] = (byte) ('a' + i % 7);
+            }
+        } else {
+            new Random(seed).nextBytes(contents);
+        }
+        File file = new File(dir, name);
+        Utils.writeContents(file, (Object) contents);
+        return file;
+    }
+
+    @Test
+    public void bigFilesAreStoredAsTheyAreAndCopiedBack() {
+        Repository repo = UnitTest.scratchRepository();
+        File big = file(repo.root, "big.bin", ObjectStore.BIG_FILE + 4097, 1);
+        byte[] contents = Utils.readContents(big);
+
+        String id = repo.blobs.writeFile(big);
+        assertEquals(Utils.sha1(big), id);
+        assertEquals(Utils.sha1((Object) contents), id);
+        assertTrue(repo.blobs.isBig(id));
+        assertArrayEquals(contents, Utils.readContents(repo.blobs.file(id)));
+        assertArrayEquals(contents, repo.blobs.read(id));
+        assertEquals(id, repo.blobs.writeFile(big));
+
+        /* copied over a longer file, which is cut to the object */
+        File target = file(repo.root, "target.bin", ObjectStore.BIG_FILE * 2, 2);
+        repo.blobs.copyTo(id, target);
+        assertArrayEquals(contents, Utils.readContents(target));
+
+        /* a file just under the threshold is deflated as any other */
+        File small = file(repo.root, "small.bin", ObjectStore.BIG_FILE - 1, 0);
+        String smallId = repo.blobs.writeFile(small);
+        assertEquals(Utils.sha1(small), smallId);
+        assertFalse(repo.blobs.isBig(smallId));
+        assertTrue(repo.blobs.file(smallId).length() < small.length());
+        repo.blobs.copyTo(smallId, target);
+        assertArrayEquals(Utils.readContents(small), Utils.readContents(target));
+
+        /* and no temporary file is left behind */
+        for (String name : Utils.plainFilenamesIn(repo.blobsDir)) {
+            assertFalse(name, name.endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    public void bigFilesAreCommittedCheckedOutAndLeftLoose() {
+        Repository repo = UnitTest.scratchRepository();
+        File big = file(repo.root, "big.bin", ObjectStore.BIG_FILE + 1, 3);
+        byte[] contents = Utils.readContents(big);
+        Utils.writeContents(new File(repo.root, "f.txt"), "one\n");
+        repo.add("big.bin", "f.txt");
+        String id = repo.commit("big");
+        String blob = Utils.sha1((Object) contents);
+        assertEquals(blob, Commit.readCommit(id).getBlobs().get("big.bin"));
+
+        file(repo.root, "big.bin", 10, 4);
+        repo.checkoutFile("big.bin");
+        assertArrayEquals(contents, Utils.readContents(big));
+
+        /* gc packs the other objects, but streams can't be read from the pack */
+        repo.gc();
+        assertTrue(repo.blobs.file(blob).isFile());
+        assertFalse(repo.blobs.file(Utils.sha1("one\n")).isFile());
+        assertTrue(big.delete());
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        reopened.checkoutFile(id, "big.bin");
+        assertArrayEquals(contents, Utils.readContents(big));
+        assertEquals("one\n", new String(reopened.blobs.read(Utils.sha1("one\n")),
+                StandardCharsets.UTF_8));
+    }
+}
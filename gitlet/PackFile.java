@@ -0,0 +1,330 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A single file holding many objects, written by gc. Each object is
+ *  stored either whole or as a delta against an object earlier in the
+ *  pack. A separate index file maps every id to its type and the offset
+ *  of its entry, so one object is read without scanning the pack.
+ *
+ *  A pack is named after the SHA-1 of its entries, pack-SHA.pack, and
+ *  never replaced in place. gc writes the new pack first and then
+ *  renames the index over the old one, which is the moment the new pack
+ *  takes over. The old pack is kept until the next gc, so an operation
+ *  of another instance or process that read the old index just before
+ *  still finds its objects; every pack older than that is deleted. Both
+ *  files are first written to temporary files of their own, named unlike
+ *  those of any other gc. A crash at any point leaves an index and the
+ *  pack it names. The index names its pack by
+ *  that SHA, which also ends the pack, and is checked against it on load.
+ *
+ *  Pack entry: kind byte (FULL or DELTA), [base offset long if DELTA],
+ *  payload length int, payload. The pack ends with the 20 bytes of its SHA.
+ *  Index: "gpi", version byte, the 20 bytes of the SHA of the pack, count
+ *  int, then per object sorted by id: the 20 bytes of the id, type byte,
+ *  offset long. An index written by older versions has no header and
+ *  indexes LEGACYPACK.
+ *  @author Tianyi Xu
+ */
+class PackFile {
+    /** Object types. */
+    static final byte BLOB = 1;
+    static final byte COMMIT = 2;
+    static final byte TREE = 3;
+
+    /* Entry kinds */
+    private static final byte FULL = 0;
+    private static final byte DELTA = 1;
+
+    /* Longest chain of deltas allowed before an object is stored whole */
+    private static final int MAX_DEPTH = 50;
+
+    /* Start of an index and the version of its layout */
+    private static final byte[] MAGIC = {'g', 'p', 'i'};
+    private static final byte VERSION = 1;
+    private static final int SHA_BYTES = Utils.UID_LENGTH / 2;
+
+    /** An object to be packed, with the id of a similar object
+     *  that it may be stored as a delta of. */
+    static class Entry {
+        final String id;
+        final byte type;
+        final String base;
+
+        Entry(String id, byte type, String base) {
+            this.id = id;
+            this.type = type;
+            this.base = base;
+        }
+    }
+
+    private final File legacyPack;
+    private final File index;
+
+    /* The loaded index, sorted by id, null until first used, and the
+     * pack it indexes */
+    private ObjectId[] ids;
+    private byte[] types;
+    private long[] offsets;
+    private File pack;
+
+    PackFile(File legacyPack, File index) {
+        this.legacyPack = legacyPack;
+        this.index = index;
+    }
+
+    /** Return true iff the pack holds the object ID of type TYPE. */
+    boolean contains(String id, byte type) {
+        int k = find(id);
+        return k >= 0 && types[k] == type;
+    }
+
+    /** Return the ids of all the packed objects of type TYPE, sorted. */
+    synchronized List<String> ids(byte type) {
+        loadIndex();
+        List<String> result = new ArrayList<>();
+        for (int k = 0; k < ids.length; k++) {
+            if (types[k] == type) {
+                result.add(ids[k].toString());
+            }
+        }
+        return result;
+    }
+
+    /** Return the contents of the packed object ID. */
+    byte[] read(String id) {
+        long offset;
+        File file;
+        synchronized (this) {
+            int k = find(id);
+            if (k < 0) {
+                throw new IllegalArgumentException("no such object " + id);
+            }
+            offset = offsets[k];
+            file = pack;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return readAt(in, offset);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private byte[] readAt(RandomAccessFile in, long offset) throws IOException {
+        in.seek(offset);
+        byte kind = in.readByte();
+        long base = kind == DELTA ? in.readLong() : -1;
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        if (kind == FULL) {
+            return payload;
+        }
+        return Delta.apply(readAt(in, base), payload);
+    }
+
+    /** Replace the pack by one holding ENTRIES, in that order, reading
+     *  their contents with STORES (indexed by type). An entry is stored as
+     *  a delta of its base when the base comes earlier in ENTRIES and the
+     *  delta is less than half the size of the object. Return the number
+     *  of objects stored as deltas. */
+    synchronized int write(List<Entry> entries, Map<Byte, ObjectStore> stores) {
+        File dir = index.getParentFile();
+        File tmpPack = Utils.tempFile(dir, ".pack.");
+        File tmpIndex = Utils.tempFile(dir, "." + index.getName() + ".");
+        try {
+            return write(entries, stores, tmpPack, tmpIndex);
+        } finally {
+            /* left only by a failed gc */
+            tmpPack.delete();
+            tmpIndex.delete();
+        }
+    }
+
+    /** Write the pack holding ENTRIES to TMPPACK and its index to
+     *  TMPINDEX, then install them, as described for write. */
+    private int write(List<Entry> entries, Map<Byte, ObjectStore> stores,
+                      File tmpPack, File tmpIndex) {
+        loadIndex();
+        File oldPack = pack;
+        File dir = index.getParentFile();
+        Map<ObjectId, Long> written = new HashMap<>();
+        Map<ObjectId, Integer> depths = new HashMap<>();
+        Map<ObjectId, Byte> typeOf = new HashMap<>();
+        int deltas = 0;
+        byte[] sha;
+
+        MessageDigest md = Utils.newDigest();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DigestOutputStream(Files.newOutputStream(tmpPack.toPath()), md)))) {
+            long offset = 0;
+            for (Entry e : entries) {
+                ObjectId id = ObjectId.fromHex(e.id);
+                if (written.containsKey(id)) {
+                    continue;
+                }
+                byte[] contents = stores.get(e.type).read(e.id);
+                byte[] delta = null;
+                ObjectId base = e.base == null ? null : ObjectId.fromHex(e.base);
+                if (base != null && written.containsKey(base)
+                        && depths.get(base) < MAX_DEPTH) {
+                    delta = Delta.create(stores.get(typeOf.get(base)).read(e.base), contents);
+                    if (delta.length >= contents.length / 2) {
+                        delta = null;
+                    }
+                }
+
+                written.put(id, offset);
+                typeOf.put(id, e.type);
+                if (delta == null) {
+                    out.writeByte(FULL);
+                    out.writeInt(contents.length);
+                    out.write(contents);
+                    depths.put(id, 0);
+                    offset += 1 + 4 + contents.length;
+                } else {
+                    out.writeByte(DELTA);
+                    out.writeLong(written.get(base));
+                    out.writeInt(delta.length);
+                    out.write(delta);
+                    depths.put(id, depths.get(base) + 1);
+                    offset += 1 + 8 + 4 + delta.length;
+                    deltas++;
+                }
+            }
+            out.flush();
+            sha = md.digest();
+            out.write(sha);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        File newPack = packNamed(sha);
+
+        ObjectId[] sorted = written.keySet().toArray(new ObjectId[0]);
+        Arrays.sort(sorted);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmpIndex.toPath())))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.write(sha);
+            out.writeInt(sorted.length);
+            for (ObjectId id : sorted) {
+                out.write(id.toBytes());
+                out.writeByte(typeOf.get(id));
+                out.writeLong(written.get(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+
+        try {
+            Files.move(tmpPack.toPath(), newPack.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmpIndex.toPath(), index.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (String name : Utils.plainFilenamesIn(dir)) {
+            File file = new File(dir, name);
+            if ((name.startsWith("pack-") && name.endsWith(".pack")
+                    || file.equals(legacyPack))
+                    && !file.equals(newPack) && !file.equals(oldPack)) {
+                file.delete();
+            }
+        }
+        ids = null;
+        return deltas;
+    }
+
+    /** Return the file of the pack whose SHA is SHA. */
+    private File packNamed(byte[] sha) {
+        return new File(index.getParentFile(), "pack-" + Utils.toHex(sha) + ".pack");
+    }
+
+    /** Forget the index read so far, for when another process may have
+     *  rewritten the pack. */
+    synchronized void invalidate() {
+        ids = null;
+    }
+
+    /** Return the position of ID in the index, or a negative number. */
+    private synchronized int find(String id) {
+        loadIndex();
+        return Arrays.binarySearch(ids, ObjectId.fromHex(id));
+    }
+
+    private void loadIndex() {
+        if (ids != null) {
+            return;
+        }
+        if (!index.isFile()) {
+            ids = new ObjectId[0];
+            types = new byte[0];
+            offsets = new long[0];
+            pack = legacyPack;
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(index.toPath())))) {
+            in.mark(MAGIC.length);
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (Arrays.equals(magic, MAGIC)) {
+                if (in.readByte() > VERSION) {
+                    throw Utils.error("Repository written by a newer version of gitlet.");
+                }
+                byte[] sha = new byte[SHA_BYTES];
+                in.readFully(sha);
+                pack = packNamed(sha);
+                if (!Arrays.equals(sha, trailer(pack))) {
+                    throw Utils.error("Corrupted repository state.");
+                }
+            } else {
+                in.reset();
+                pack = legacyPack;
+            }
+            int n = in.readInt();
+            ObjectId[] newIds = new ObjectId[n];
+            types = new byte[n];
+            offsets = new long[n];
+            byte[] raw = new byte[Utils.UID_LENGTH / 2];
+            for (int k = 0; k < n; k++) {
+                in.readFully(raw);
+                newIds[k] = ObjectId.of(raw);
+                types[k] = in.readByte();
+                offsets[k] = in.readLong();
+            }
+            ids = newIds;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the SHA that ends the pack FILE, or null if it is missing
+     *  or too short to have one. */
+    private static byte[] trailer(File file) throws IOException {
+        if (file.length() < SHA_BYTES) {
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] sha = new byte[SHA_BYTES];
+            in.seek(in.length() - SHA_BYTES);
+            in.readFully(sha);
+            return sha;
+        }
+    }
+}
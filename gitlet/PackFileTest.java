@@ -0,0 +1,73 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests of the packs gc writes and of what readers of an older pack
+ *  still find.
+ *  @author Tianyi Xu
+ */
+public class PackFileTest {
+
+    /** Return the packs of REPO, and fail if gc left a temporary file. */
+    private static List<String> packs(Repository repo) {
+        List<String> packs = new ArrayList<>();
+        for (String name : Utils.plainFilenamesIn(repo.dir)) {
+            assertFalse(name, name.endsWith(".tmp"));
+            if (name.endsWith(".pack")) {
+                packs.add(name);
+            }
+        }
+        return packs;
+    }
+
+    /** Commit CONTENTS as f.txt in REPO and return the commit id. */
+    private static String commit(Repository repo, String contents) {
+        Utils.writeContents(new File(repo.root, "f.txt"), contents);
+        repo.add("f.txt");
+        return repo.commit(contents);
+    }
+
+    @Test
+    public void previousPackIsKeptUntilTheNextGc() {
+        Repository repo = UnitTest.scratchRepository();
+        commit(repo, "one");
+        repo.gc();
+        List<String> first = packs(repo);
+        assertEquals(1, first.size());
+
+        commit(repo, "two");
+        repo.gc();
+        List<String> second = packs(repo);
+        assertEquals(2, second.size());
+        assertTrue(second.containsAll(first));
+
+        commit(repo, "three");
+        repo.gc();
+        List<String> third = packs(repo);
+        assertEquals(2, third.size());
+        assertFalse(third.contains(first.get(0)));
+        second.removeAll(first);
+        assertTrue(third.containsAll(second));
+    }
+
+    @Test
+    public void readerOfTheOldIndexFindsItsObjects() {
+        Repository repo = UnitTest.scratchRepository();
+        String id = commit(repo, "one");
+        repo.gc();
+        /* read the index as it is, as an operation of another process would */
+        PackFile reader = new PackFile(Utils.join(repo.dir, "objects.pack"),
+                Utils.join(repo.dir, "objects.idx"));
+        assertTrue(reader.contains(id, PackFile.COMMIT));
+
+        commit(repo, "two");
+        repo.gc();
+        assertArrayEquals(repo.commits.read(id), reader.read(id));
+    }
+}
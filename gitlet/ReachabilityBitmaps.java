@@ -0,0 +1,285 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** Bitmaps of the commits reachable from the branch tips and from every
+ *  SPACING-th commit, so whether one commit is an ancestor of another is
+ *  answered by testing a bit, or by a short walk to the nearest commit
+ *  with a bitmap.
+ *
+ *  Bits are numbered in the order commits were made, so the ancestors of
+ *  a commit are mostly one run of ones and the bitmaps, stored with
+ *  Ewah, stay small. Positions are those of the commit graph, which are
+ *  only stable until it is rewritten, so the file records the number of
+ *  sorted records of the graph and is rebuilt when that changes.
+ *
+ *  Layout: "GRB1", graph sorted count int, commit count int, the graph
+ *  position of each bit int, bitmap count int, then per bitmap: graph
+ *  position int, length int and its compressed words.
+ *  @author Tianyi Xu
+ */
+class ReachabilityBitmaps {
+    private static final byte[] MAGIC = {'G', 'R', 'B', '1'};
+    /** Every SPACING-th commit keeps a bitmap even when no branch points to it. */
+    static final int SPACING = Integer.getInteger("gitlet.bitmapSpacing", 128);
+
+    private final File file;
+    private final CommitGraph graph;
+
+    /* Number of sorted records of the graph the positions belong to */
+    private int epoch;
+    /* Bit -> graph position, the first N entries are used */
+    private int[] order;
+    private int n;
+    /* Graph position -> bit */
+    private int[] bitOf;
+    /* Graph position -> compressed bitmap of the commits it reaches */
+    private Map<Integer, long[]> bitmaps;
+    /* Graph position -> bitmaps already decompressed */
+    private final Map<Integer, BitSet> decoded = new HashMap<>();
+    private boolean loaded;
+    /* Number of commits the file numbers */
+    private int saved;
+
+    ReachabilityBitmaps(File file, CommitGraph graph) {
+        this.file = file;
+        this.graph = graph;
+    }
+
+    /** Forget the bitmaps read so far, for when another process may have
+     *  rewritten them. */
+    synchronized void invalidate() {
+        loaded = false;
+    }
+
+    /** Return true if the commit TO is FROM or one of its ancestors. */
+    synchronized boolean reaches(String from, String to) {
+        load();
+        int start = graph.position(from);
+        int target = graph.position(to);
+        if (start < 0 || target < 0) {
+            return false;
+        }
+        int bit = bitOf[target];
+        int generation = graph.generation(target);
+        Set<Integer> seen = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            int pos = stack.pop();
+            if (pos == target) {
+                return true;
+            }
+            /* a commit can't reach one with the same or a larger generation */
+            if (graph.generation(pos) <= generation || !seen.add(pos)) {
+                continue;
+            }
+            BitSet reached = bitmap(pos);
+            if (reached != null) {
+                if (reached.get(bit)) {
+                    return true;
+                }
+                continue;
+            }
+            for (int parent : graph.parents(pos)) {
+                stack.push(parent);
+            }
+        }
+        return false;
+    }
+
+    /** Number the commits made since the last update, give a bitmap to
+     *  those of TIPS that have none and drop the bitmaps of the old tips.
+     *  The file is only written once it misses SPACING commits: those it
+     *  misses are numbered again when it is read, in the order they were
+     *  added to the graph, and the bitmap of a tip it lacks is made again
+     *  from that of an ancestor at most about SPACING commits away. */
+    synchronized void update(Collection<String> tips) {
+        load();
+        Set<Integer> keep = new HashSet<>();
+        for (String tip : tips) {
+            int pos = graph.position(tip);
+            if (pos >= 0) {
+                keep.add(pos);
+                if (!bitmaps.containsKey(pos)) {
+                    addBitmap(pos);
+                }
+            }
+        }
+        for (Integer pos : new HashSet<>(bitmaps.keySet())) {
+            if (!keep.contains(pos) && bitOf[pos] % SPACING != 0) {
+                bitmaps.remove(pos);
+                decoded.remove(pos);
+            }
+        }
+        if (n - saved >= SPACING) {
+            save();
+        }
+    }
+
+    /** Read the bitmaps, starting over if the graph was rewritten, and
+     *  number the commits added to the graph since they were saved. */
+    private void load() {
+        if (!loaded || epoch != graph.sortedSize()) {
+            loaded = true;
+            decoded.clear();
+            n = 0;
+            saved = 0;
+            order = new int[0];
+            bitmaps = new HashMap<>();
+            epoch = graph.sortedSize();
+            if (file.isFile()) {
+                read();
+            }
+        }
+        int size = graph.size();
+        if (n == size) {
+            return;
+        }
+        int first = n;
+        if (n == 0) {
+            /* a fresh numbering: sort by generation so parents come first */
+            Integer[] all = new Integer[size];
+            for (int pos = 0; pos < size; pos++) {
+                all[pos] = pos;
+            }
+            Arrays.sort(all, (a, b) -> Integer.compare(graph.generation(a), graph.generation(b)));
+            order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = all[i];
+            }
+        } else {
+            /* commits appended to the graph come after their parents */
+            order = Arrays.copyOf(order, size);
+            for (int i = n; i < size; i++) {
+                order[i] = i;
+            }
+        }
+        n = size;
+        bitOf = new int[size];
+        for (int bit = 0; bit < n; bit++) {
+            bitOf[order[bit]] = bit;
+        }
+        for (int bit = first; bit < n; bit++) {
+            if (bit % SPACING == 0) {
+                addBitmap(order[bit]);
+            }
+        }
+    }
+
+    private void read() {
+        ByteBuffer in = ByteBuffer.wrap(Utils.readContents(file));
+        in.position(MAGIC.length);
+        if (in.getInt() != epoch) {
+            return;
+        }
+        int count = in.getInt();
+        if (count > graph.size()) {
+            return;
+        }
+        int[] numbered = new int[count];
+        for (int bit = 0; bit < count; bit++) {
+            numbered[bit] = in.getInt();
+        }
+        int m = in.getInt();
+        for (int i = 0; i < m; i++) {
+            int pos = in.getInt();
+            long[] words = new long[in.getInt()];
+            for (int w = 0; w < words.length; w++) {
+                words[w] = in.getLong();
+            }
+            bitmaps.put(pos, words);
+        }
+        order = numbered;
+        n = count;
+        saved = count;
+        bitOf = new int[graph.size()];
+        for (int bit = 0; bit < n; bit++) {
+            bitOf[order[bit]] = bit;
+        }
+    }
+
+    private void save() {
+        File tmp = Utils.tempFile(file.getParentFile(), "." + file.getName() + ".");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+            out.write(MAGIC);
+            out.writeInt(epoch);
+            out.writeInt(n);
+            for (int bit = 0; bit < n; bit++) {
+                out.writeInt(order[bit]);
+            }
+            out.writeInt(bitmaps.size());
+            for (Map.Entry<Integer, long[]> bitmap : bitmaps.entrySet()) {
+                out.writeInt(bitmap.getKey());
+                out.writeInt(bitmap.getValue().length);
+                for (long word : bitmap.getValue()) {
+                    out.writeLong(word);
+                }
+            }
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        saved = n;
+    }
+
+    /** Compute the bitmap of the commit at graph position POS from the
+     *  bitmaps of its nearest ancestors that have one. */
+    private void addBitmap(int pos) {
+        BitSet reached = new BitSet(n);
+        Set<Integer> seen = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(pos);
+        while (!stack.isEmpty()) {
+            int p = stack.pop();
+            if (!seen.add(p)) {
+                continue;
+            }
+            BitSet known = p == pos ? null : bitmap(p);
+            if (known != null) {
+                reached.or(known);
+                continue;
+            }
+            reached.set(bitOf[p]);
+            for (int parent : graph.parents(p)) {
+                stack.push(parent);
+            }
+        }
+        bitmaps.put(pos, Ewah.compress(reached.toLongArray()));
+        decoded.put(pos, reached);
+    }
+
+    /** Return the commits reached from the graph position POS, or null if
+     *  it has no bitmap. */
+    private BitSet bitmap(int pos) {
+        BitSet reached = decoded.get(pos);
+        if (reached == null && bitmaps.containsKey(pos)) {
+            reached = BitSet.valueOf(Ewah.decompress(bitmaps.get(pos)));
+            decoded.put(pos, reached);
+        }
+        return reached;
+    }
+}
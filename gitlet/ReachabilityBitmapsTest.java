@@ -0,0 +1,112 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/** Tests of ancestry checks, answered from the reachability bitmaps,
+ *  against walks of the parents of the commits.
+ *  @author Tianyi Xu
+ */
+public class ReachabilityBitmapsTest {
+
+    /* Branches the history is made on */
+    private static final int BRANCHES = 3;
+
+    @Test
+    public void ancestryMatchesParentWalks() {
+        Repository repo = UnitTest.scratchRepository();
+        assertTrue(makeHistory(repo, 2 * ReachabilityBitmaps.SPACING + 40) > 0);
+        checkAncestry(repo);
+
+        /* the bitmaps read back from their file give the same answers */
+        Repository reopened = new Repository(repo.root);
+        reopened.makeCurrent();
+        checkAncestry(reopened);
+    }
+
+    @Test
+    public void rootCommitHasNoProperAncestor() {
+        Repository repo = UnitTest.scratchRepository();
+        Commit root = repo.log().get(0);
+        assertFalse(root.isAncestor(root.getID()));
+
+        Utils.writeContents(new File(repo.root, "f.txt"), "one");
+        repo.add("f.txt");
+        Commit child = Commit.readCommit(repo.commit("one"));
+        assertTrue(child.isAncestor(root.getID()));
+        assertFalse(root.isAncestor(child.getID()));
+    }
+
+    /** Make about COMMITS commits in REPO on a few branches that now
+     *  and then merge one another. Each branch changes its own file, so
+     *  the merges never conflict. Return the number of merges. */
+    private static int makeHistory(Repository repo, int commits) {
+        Random random = new Random(61);
+        int merges = 0;
+        for (int b = 1; b < BRANCHES; b++) {
+            repo.branch("b" + b);
+        }
+        int current = 0;
+        for (int i = 0; i < commits; i++) {
+            int branch = random.nextInt(BRANCHES);
+            if (branch != current) {
+                repo.checkout(name(branch));
+                current = branch;
+            }
+            int other = random.nextInt(BRANCHES);
+            if (other != current && random.nextInt(8) == 0) {
+                try {
+                    if (repo.merge(name(other)) == Repository.MergeResult.MERGED) {
+                        merges++;
+                    }
+                } catch (GitletException excp) {
+                    /* already merged or an ancestor */
+                }
+                continue;
+            }
+            String file = "f" + current + ".txt";
+            Utils.writeContents(new File(repo.root, file), "commit " + i);
+            repo.add(file);
+            repo.commit("commit " + i);
+        }
+        return merges;
+    }
+
+    private static String name(int branch) {
+        return branch == 0 ? "master" : "b" + branch;
+    }
+
+    /** Check isAncestor of pairs of commits of REPO against walks of their
+     *  parents. */
+    private static void checkAncestry(Repository repo) {
+        List<String> ids = new ArrayList<>(repo.commits.ids());
+        Random random = new Random(7);
+        for (int q = 0; q < 2000; q++) {
+            String a = ids.get(random.nextInt(ids.size()));
+            String b = ids.get(random.nextInt(ids.size()));
+            boolean expected = !a.equals(b) && ancestors(a).contains(b);
+            assertEquals(a + " reaches " + b, expected, Commit.readCommit(a).isAncestor(b));
+        }
+    }
+
+    /** Return COMMITID and every commit it reaches through its parents. */
+    private static Set<String> ancestors(String commitId) {
+        Set<String> result = new HashSet<>();
+        List<String> stack = new ArrayList<>(List.of(commitId));
+        while (!stack.isEmpty()) {
+            String id = stack.remove(stack.size() - 1);
+            if (result.add(id)) {
+                stack.addAll(Commit.readCommit(id).getParents());
+            }
+        }
+        return result;
+    }
+}
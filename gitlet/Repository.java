@@ -0,0 +1,358 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/** A gitlet repository, to be driven from Java code as well as from the
+ *  command line, which is a thin layer over it (see Main). Usage:
+ *      Repository repo = Repository.init(new File("work"));
+ *      repo.add("notes.txt");
+ *      String id = repo.commit("Add notes");
+ *  Each instance works on the repository under its own root directory
+ *  and holds its own object stores and caches. Errors are thrown as
+ *  GitletException, with the message the command line prints, and
+ *  nothing is printed or exited. An instance runs one operation at a
+ *  time; operations on different instances run from any threads at once.
+ *  An instance notices every change other instances or processes saved
+ *  to its repository between two of its operations, by the generation
+ *  the index holds; operations of several instances on one repository
+ *  that overlap are not serialized.
+ *
+ *  Code under an operation reaches the repository through current(): the
+ *  instance is bound to the thread for the length of the operation, and
+ *  to the workers the operation hands files to.
+ *  @author Tianyi Xu
+ */
+public class Repository {
+    /** The outcome of a merge. */
+    public enum MergeResult {
+        /** Merged into a new commit. */
+        MERGED,
+        /** Merged into a new commit, with conflicts in some files. */
+        CONFLICT,
+        /** The current branch was moved to the given one. */
+        FAST_FORWARD
+    }
+
+    /** What status shows. */
+    public static final class Status {
+        /** The current branch. */
+        public final String currentBranch;
+        /** Every branch, sorted. */
+        public final List<String> branches;
+        /** Files staged for addition, sorted. */
+        public final List<String> staged;
+        /** Files staged for removal, sorted. */
+        public final List<String> removed;
+        /** Working files changed but not staged, mapped to "modified" or
+         *  "deleted". */
+        public final SortedMap<String, String> modified;
+        /** Working files neither tracked nor staged, sorted. */
+        public final List<String> untracked;
+
+        Status(String currentBranch, List<String> branches, List<String> staged,
+               List<String> removed, SortedMap<String, String> modified,
+               List<String> untracked) {
+            this.currentBranch = currentBranch;
+            this.branches = Collections.unmodifiableList(branches);
+            this.staged = Collections.unmodifiableList(staged);
+            this.removed = Collections.unmodifiableList(removed);
+            this.modified = Collections.unmodifiableSortedMap(modified);
+            this.untracked = Collections.unmodifiableList(untracked);
+        }
+    }
+
+    /* The repository bound to each thread */
+    private static final ThreadLocal<Repository> CURRENT = new ThreadLocal<>();
+
+    /** The working directory and the repository in it. */
+    final File root;
+    final File dir;
+    final File commitsDir;
+    final File blobsDir;
+    final File treesDir;
+    final File headFile;
+    final File refsDir;
+    final File indexFile;
+    /** The whole state as older versions saved it. */
+    final File gitTree;
+
+    final PackFile pack;
+    final ObjectStore commits;
+    final ObjectStore blobs;
+    final ObjectStore trees;
+
+    /** Commits already read or written, shared by every reader. */
+    final CommitCache cache;
+    /** Sorted table of every commit id, for resolving abbreviated ids. */
+    final CommitIndex commitIndex;
+    /** Parents and generation numbers of every commit, for history walks. */
+    final CommitGraph graph;
+    /** Reachability bitmaps of the branch tips, for ancestry checks. */
+    final ReachabilityBitmaps bitmaps;
+    /** Metadata of every commit in creation order, for global-log and find. */
+    final CommitLog log;
+
+    /* The state read by the last operation, kept for the next one as
+     * long as its generation is that of the saved state */
+    private GTTree state;
+
+    /** The repository in the working directory ROOT, which need not
+     *  exist yet. Nothing is read until the first operation. */
+    public Repository(File root) {
+        this.root = root.getAbsoluteFile();
+        dir = Utils.join(this.root, ".gitlet");
+        commitsDir = Utils.join(dir, "commits");
+        blobsDir = Utils.join(dir, "blobs");
+        treesDir = Utils.join(dir, "trees");
+        headFile = Utils.join(dir, "HEAD");
+        refsDir = Utils.join(dir, "refs");
+        indexFile = Utils.join(dir, "index");
+        gitTree = Utils.join(dir, "gitTree");
+        pack = new PackFile(Utils.join(dir, "objects.pack"), Utils.join(dir, "objects.idx"));
+        commits = new ObjectStore(commitsDir, pack, PackFile.COMMIT);
+        blobs = new ObjectStore(blobsDir, pack, PackFile.BLOB);
+        trees = new ObjectStore(treesDir, pack, PackFile.TREE);
+        cache = new CommitCache(Long.getLong("gitlet.commitCache", CommitCache.DEFAULT_CAPACITY));
+        commitIndex = new CommitIndex(Utils.join(dir, "commitIndex"));
+        graph = new CommitGraph(Utils.join(dir, "commitGraph"));
+        bitmaps = new ReachabilityBitmaps(Utils.join(dir, "bitmaps"), graph);
+        log = new CommitLog(Utils.join(dir, "commitLog"), Utils.join(dir, "commitMessages"),
+                Utils.join(dir, "messageIndex"));
+    }
+
+    /** Create a repository in the working directory ROOT and return it. */
+    public static Repository init(File root) {
+        Repository repo = new Repository(root);
+        repo.bind(() -> {
+            if (repo.exists()) {
+                throw Utils.error("Gitlet version-control system already exists "
+                        + "in the current directory.");
+            }
+            GTTree t = new GTTree();
+            t.init();
+            t.saveTree();
+            repo.state = t;
+            return null;
+        });
+        return repo;
+    }
+
+    /** Return true if there is a repository under the root. */
+    public boolean exists() {
+        return headFile.exists() || gitTree.exists();
+    }
+
+    /** Stage the working files FILENAMES, paths relative to the root. */
+    public void add(String... fileNames) {
+        run(t -> {
+            t.add(List.of(fileNames));
+            return null;
+        });
+    }
+
+    /** Commit the staged files with MESSAGE and return the id of the new
+     *  commit. */
+    public String commit(String message) {
+        return run(t -> t.commit(message));
+    }
+
+    /** Unstage FILENAME, or stage it for removal and delete it if the head
+     *  commit tracks it. */
+    public void rm(String fileName) {
+        run(t -> {
+            t.rmFile(fileName);
+            return null;
+        });
+    }
+
+    /** Return the commits from the head back to the initial commit,
+     *  following first parents. */
+    public List<Commit> log() {
+        return run(GTTree::log);
+    }
+
+    /** Return the entry log would show of every commit ever made, in the
+     *  order they were made. */
+    public List<String> globalLog() {
+        return run(GTTree::globalLog);
+    }
+
+    /** Return the ids of the commits whose message is MESSAGE. */
+    public List<String> find(String message) {
+        return run(t -> t.find(message));
+    }
+
+    /** Return the branches, the staged files and the working files
+     *  changed or untracked since the head commit. */
+    public Status status() {
+        return run(GTTree::status);
+    }
+
+    /** Check out the branch BRANCHNAME. */
+    public void checkout(String branchName) {
+        run(t -> {
+            t.checkOutBranch(branchName);
+            return null;
+        });
+    }
+
+    /** Write FILENAME as the head commit has it to the working directory. */
+    public void checkoutFile(String fileName) {
+        run(t -> {
+            t.checkOut(fileName);
+            return null;
+        });
+    }
+
+    /** Write FILENAME as the commit whose id starts with COMMITID has it
+     *  to the working directory. */
+    public void checkoutFile(String commitId, String fileName) {
+        run(t -> {
+            t.checkOut(fileName, commitId);
+            return null;
+        });
+    }
+
+    /** Create the branch BRANCHNAME at the head commit. */
+    public void branch(String branchName) {
+        run(t -> {
+            t.branch(branchName);
+            return null;
+        });
+    }
+
+    /** Delete the branch BRANCHNAME, but not the commits on it. The
+     *  current branch can't be deleted. */
+    public void rmBranch(String branchName) {
+        run(t -> {
+            t.rmBranch(branchName);
+            return null;
+        });
+    }
+
+    /** Check out the commit whose id starts with COMMITID and move the
+     *  current branch to it. */
+    public void reset(String commitId) {
+        run(t -> {
+            t.reset(commitId);
+            return null;
+        });
+    }
+
+    /** Merge the branch BRANCHNAME into the current branch. */
+    public MergeResult merge(String branchName) {
+        return run(t -> t.merge(branchName));
+    }
+
+    /** Write the changes of the working files from the staging area to
+     *  OUT as unified diffs. */
+    public void diff(OutputStream out) {
+        run(t -> {
+            t.diff(false, out);
+            return null;
+        });
+    }
+
+    /** Write the changes of the staging area from the head commit to OUT
+     *  as unified diffs. */
+    public void diffStaged(OutputStream out) {
+        run(t -> {
+            t.diff(true, out);
+            return null;
+        });
+    }
+
+    /** Write the changes from the commit FROM to the commit TO, given by
+     *  their ids or prefixes of them, to OUT as unified diffs. */
+    public void diff(String from, String to, OutputStream out) {
+        run(t -> {
+            t.diff(from, to, out);
+            return null;
+        });
+    }
+
+    /** Move a repository of an older layout to the current one, and
+     *  return what was done. A repository of the original gitlet, which
+     *  no other operation reads, is converted first. */
+    public synchronized String migrate() {
+        String converted = bind(() -> exists() ? GTTree.convertOriginal() : "");
+        return converted + run(GTTree::migrate);
+    }
+
+    /** Pack the objects of the repository and return what was done. */
+    public String gc() {
+        return run(GTTree::gc);
+    }
+
+    /** Return the repository bound to this thread. */
+    static Repository current() {
+        Repository repo = CURRENT.get();
+        if (repo == null) {
+            throw new IllegalStateException("No repository bound to this thread.");
+        }
+        return repo;
+    }
+
+    /** Bind this repository to this thread for good, for tools that work
+     *  on one repository from one thread. */
+    void makeCurrent() {
+        CURRENT.set(this);
+    }
+
+    /** Return the result of OP on the state of this repository, and save
+     *  what OP changed. If OP throws, nothing is saved and everything is
+     *  read again by the next operation. */
+    private synchronized <T> T run(Function<GTTree, T> op) {
+        return bind(() -> {
+            if (state != null && GTTree.stateStamp() != state.generation()) {
+                refresh();
+            }
+            if (state == null) {
+                if (!exists()) {
+                    throw Utils.error("Not in an initialized Gitlet directory.");
+                }
+                state = GTTree.readTree();
+            }
+            try {
+                T result = op.apply(state);
+                state.saveTree();
+                return result;
+            } catch (RuntimeException | Error excp) {
+                refresh();
+                throw excp;
+            }
+        });
+    }
+
+    /** Drop everything read from the repository, which another instance
+     *  or process changed, or a failed operation left half changed. */
+    private void refresh() {
+        state = null;
+        cache.clear();
+        graph.invalidate();
+        bitmaps.invalidate();
+        pack.invalidate();
+    }
+
+    /** Return the result of BODY run with this repository bound to this
+     *  thread. */
+    <T> T bind(Supplier<T> body) {
+        Repository outer = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return body.get();
+        } finally {
+            if (outer == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(outer);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/** Benchmark of many repositories used at once through Repository, as a
+ *  service embedding gitlet would.  Usage:
+ *      java gitlet.RepositoryBenchmark [REPOS [COMMITS [THREADS]]]
+ *  Makes REPOS scratch repositories (default 16) and makes COMMITS
+ *  commits (default 50) in each, each writing and adding a file and
+ *  committing it, first from one thread and then again in new
+ *  repositories from THREADS threads (default one per core), and
+ *  reports the commits made per second both ways.
+ *  @author Tianyi Xu
+ */
+public class RepositoryBenchmark {
+
+    public static void main(String... args) throws IOException {
+        int repos = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int commits = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+
+        File dir = Files.createTempDirectory("gitlet-repos").toFile();
+        System.out.printf("%-30s %8s %12s%n", "", "commits", "commits/s");
+        report("from 1 thread", repos * commits, run(new File(dir, "serial"), repos, commits, 1));
+        report("from " + threads + " threads", repos * commits,
+                run(new File(dir, "parallel"), repos, commits, threads));
+
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /** Make COMMITS commits in each of REPOS new repositories under DIR,
+     *  from THREADS threads, and return the time taken in seconds. */
+    private static double run(File dir, int repos, int commits, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<?>> done = new ArrayList<>();
+        for (int r = 0; r < repos; r++) {
+            File root = new File(dir, "repo" + r);
+            done.add(pool.submit(() -> work(root, commits)));
+        }
+        try {
+            for (Future<?> future : done) {
+                future.get();
+            }
+        } catch (ExecutionException | InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        } finally {
+            pool.shutdown();
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /** Create a repository in ROOT and make COMMITS commits in it. */
+    private static void work(File root, int commits) {
+        root.mkdirs();
+        Repository repo = Repository.init(root);
+        for (int i = 0; i < commits; i++) {
+            String name = "f" + i % 10 + ".txt";
+            Utils.writeContents(new File(root, name), "version " + i + "\n");
+            repo.add(name);
+            repo.commit("commit " + i);
+        }
+    }
+
+    private static void report(String name, int commits, double seconds) {
+        System.out.printf("%-30s %8d %12.0f%n", name, commits, commits / seconds);
+    }
+}
@@ -0,0 +1,192 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/** Tests of the errors the Repository API throws, and of the state it
+ *  keeps across them.
+ *  @author Tianyi Xu
+ */
+public class RepositoryTest {
+
+    /** Check that OP throws a GitletException whose message is MESSAGE. */
+    private static void assertError(String message, Runnable op) {
+        try {
+            op.run();
+            fail("expected: " + message);
+        } catch (GitletException excp) {
+            assertEquals(message, excp.getMessage());
+        }
+    }
+
+    /** Return a repository with f.txt committed on master and a branch
+     *  other. */
+    private static Repository repositoryWithCommit() {
+        Repository repo = UnitTest.scratchRepository();
+        Utils.writeContents(new File(repo.root, "f.txt"), "one");
+        repo.add("f.txt");
+        repo.commit("one");
+        repo.branch("other");
+        return repo;
+    }
+
+    @Test
+    public void uninitializedDirectory() {
+        Repository repo = new Repository(UnitTest.scratchDirectory());
+        assertFalse(repo.exists());
+        assertError("Not in an initialized Gitlet directory.", repo::status);
+        assertError("Not in an initialized Gitlet directory.", () -> repo.commit("none"));
+        assertFalse(repo.dir.exists());
+    }
+
+    @Test
+    public void initTwice() {
+        Repository repo = UnitTest.scratchRepository();
+        assertError("Gitlet version-control system already exists in the current directory.",
+                () -> Repository.init(repo.root));
+        assertEquals(1, repo.log().size());
+    }
+
+    @Test
+    public void stagingErrors() {
+        Repository repo = repositoryWithCommit();
+        assertError("File does not exist.", () -> repo.add("missing.txt"));
+        assertError("No changes added to the commit.", () -> repo.commit("nothing"));
+        Utils.writeContents(new File(repo.root, "untracked.txt"), "new");
+        assertError("No reason to remove the file.", () -> repo.rm("untracked.txt"));
+    }
+
+    @Test
+    public void branchErrors() {
+        Repository repo = repositoryWithCommit();
+        assertError("A branch with that name already exists.", () -> repo.branch("other"));
+        assertError("No such branch exists.", () -> repo.checkout("missing"));
+        assertError("No need to checkout the current branch.", () -> repo.checkout("master"));
+        assertError("branch with that name does not exist.", () -> repo.rmBranch("missing"));
+        assertError("Cannot remove the current branch.", () -> repo.rmBranch("master"));
+        assertError("A branch with that name does not exist.", () -> repo.merge("missing"));
+        assertError("Cannot merge a branch with itself.", () -> repo.merge("master"));
+        assertError("Given branch is an ancestor of the current branch.",
+                () -> repo.merge("other"));
+        assertEquals(List.of("master", "other"), repo.status().branches);
+    }
+
+    @Test
+    public void commitErrors() {
+        Repository repo = repositoryWithCommit();
+        assertError("No commit with that id exists.", () -> repo.reset("0000000"));
+        assertError("No commit with that id exists.",
+                () -> repo.checkoutFile("0000000", "f.txt"));
+        String head = repo.log().get(0).getID();
+        assertError("File does not exist in that commit.",
+                () -> repo.checkoutFile(head, "missing.txt"));
+    }
+
+    @Test
+    public void abbreviatedCommitIds() {
+        Repository repo = repositoryWithCommit();
+        /* of 17 commits, two ids start with the same digit */
+        Map<Character, String> byFirstDigit = new HashMap<>();
+        String[] twin = new String[1];
+        for (int i = 0; twin[0] == null; i++) {
+            Utils.writeContents(new File(repo.root, "f.txt"), "v" + i);
+            repo.add("f.txt");
+            String id = repo.commit("v" + i);
+            twin[0] = byFirstDigit.put(id.charAt(0), id);
+        }
+        String prefix = twin[0].substring(0, 1);
+        assertError("Commit id " + prefix + " is ambiguous.", () -> repo.reset(prefix));
+        repo.checkoutFile(twin[0].substring(0, 8), "f.txt");
+        repo.reset(twin[0].substring(0, 6));
+        assertEquals(twin[0], repo.log().get(0).getID());
+        assertError("No commit with that id exists.",
+                () -> repo.reset(twin[0] + "0"));
+    }
+
+    @Test
+    public void untrackedFileInTheWay() {
+        Repository repo = repositoryWithCommit();
+        repo.checkout("other");
+        Utils.writeContents(new File(repo.root, "g.txt"), "tracked");
+        repo.add("g.txt");
+        repo.commit("add g");
+        repo.checkout("master");
+        Utils.writeContents(new File(repo.root, "g.txt"), "untracked");
+        assertError("There is an untracked file in the way; "
+                + "delete it, or add and commit it first", () -> repo.checkout("other"));
+        assertEquals("master", repo.status().currentBranch);
+        assertEquals("untracked", Utils.readContentsAsString(new File(repo.root, "g.txt")));
+    }
+
+    @Test
+    public void failedOperationKeepsTheSavedState() {
+        Repository repo = repositoryWithCommit();
+        Utils.writeContents(new File(repo.root, "s.txt"), "staged");
+        repo.add("s.txt");
+        assertError("You have uncommitted changes.", () -> repo.merge("other"));
+        assertEquals(List.of("s.txt"), repo.status().staged);
+    }
+
+    /** Run OP on REPO, then set the times of the files and directories of
+     *  its saved state back to what they were, as when OP lands within one
+     *  tick of the file system clock. */
+    private static void inOneTick(Repository repo, Runnable op) {
+        List<File> files = List.of(repo.dir, repo.refsDir, repo.indexFile, repo.headFile);
+        List<Long> times = new ArrayList<>();
+        for (File file : files) {
+            times.add(file.lastModified());
+        }
+        op.run();
+        for (int i = 0; i < files.size(); i++) {
+            assertTrue(files.get(i).setLastModified(times.get(i)));
+        }
+    }
+
+    @Test
+    public void instancesSeeEachOthersChanges() {
+        Repository repo = repositoryWithCommit();
+        Repository other = new Repository(repo.root);
+        assertEquals(2, other.log().size());
+
+        /* changes that leave every file the same size and time */
+        String[] ids = {repo.log().get(0).getID(), null};
+        for (int i = 0; i < 10; i++) {
+            Utils.writeContents(new File(repo.root, "f.txt"), "v" + i);
+            String message = "v" + i;
+            inOneTick(repo, () -> {
+                repo.add("f.txt");
+                ids[1] = repo.commit(message);
+            });
+            assertEquals(ids[1], other.log().get(0).getID());
+            inOneTick(repo, () -> other.reset(ids[0]));
+            assertEquals(ids[0], repo.log().get(0).getID());
+            inOneTick(repo, () -> repo.reset(ids[1]));
+            assertEquals(ids[1], other.log().get(0).getID());
+            inOneTick(repo, () -> other.checkout("other"));
+            assertEquals("other", repo.status().currentBranch);
+            inOneTick(repo, () -> repo.checkout("master"));
+            assertEquals("master", other.status().currentBranch);
+            ids[0] = ids[1];
+        }
+        other.rmBranch("other");
+        assertEquals(List.of("master"), repo.status().branches);
+    }
+
+    @Test
+    public void instancesSeeEachOthersGc() {
+        Repository repo = repositoryWithCommit();
+        Repository other = new Repository(repo.root);
+        String head = other.log().get(0).getID();
+        repo.gc();
+        other.checkoutFile(head, "f.txt");
+        assertEquals("one", Utils.readContentsAsString(new File(repo.root, "f.txt")));
+        assertEquals(head, other.log().get(0).getID());
+    }
+}
@@ -0,0 +1,184 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+
+/** A long-lived process that runs gitlet commands for the repository in
+ *  its working directory, so they don't pay for starting a JVM and
+ *  reading the repository every time. Usage:
+ *      java gitlet.Server [stop]
+ *  Clients (see Client) connect to the Unix domain socket SOCKET. Each
+ *  connection runs one command, and commands run one at a time, so
+ *  concurrent clients see the repository as if they had run one after
+ *  another.
+ *
+ *  Protocol: the client sends the number of arguments int and each
+ *  argument as written by writeUTF. The server answers with frames: a
+ *  stream byte (STDOUT or STDERR), a length int and that many bytes of
+ *  output, and finally EXIT followed by the exit status int.
+ *  @author Tianyi Xu
+ */
+public class Server {
+    /** The socket of the server of the repository in the working directory. */
+    static final File SOCKET = Client.SOCKET;
+
+    /* Frame kinds */
+    static final byte STDOUT = 1;
+    static final byte STDERR = 2;
+    static final byte EXIT = 0;
+
+    /* The request that stops the server */
+    static final String STOP = "--stop-server";
+
+    /** Thrown by Main.exit to end the current command. */
+    static class Exit extends RuntimeException {
+        final int status;
+
+        Exit(int status) {
+            super(null, null, false, false);
+            this.status = status;
+        }
+    }
+
+    private static volatile boolean serving;
+
+    /** Return true if commands run inside the server. */
+    static boolean isServing() {
+        return serving;
+    }
+
+    public static void main(String... args) throws IOException {
+        if (!new Repository(Main.CWD).exists()) {
+            Utils.message("Not in an initialized Gitlet directory.");
+            System.exit(0);
+        }
+        if (args.length == 1 && args[0].equals("stop")) {
+            if (Client.forward(new String[] {STOP}) < 0) {
+                Utils.message("No server is running.");
+            }
+            return;
+        } else if (args.length != 0) {
+            Utils.message("Incorrect operands.");
+            System.exit(0);
+        }
+
+        if (Client.forward(null) >= 0) {
+            Utils.message("A server is already running.");
+            System.exit(0);
+        }
+        Files.deleteIfExists(SOCKET.toPath());
+        SOCKET.deleteOnExit();
+        serving = true;
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            while (true) {
+                SocketChannel client = server.accept();
+                Thread t = new Thread(() -> serve(client), "gitlet-client");
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+    }
+
+    /** Read a command from CLIENT, run it and send back its output. */
+    private static void serve(SocketChannel client) {
+        try (SocketChannel channel = client;
+             DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            int argc = in.readInt();
+            if (argc < 0) {
+                /* a client checking whether the server is up */
+                return;
+            }
+            String[] args = new String[argc];
+            for (int i = 0; i < argc; i++) {
+                args[i] = in.readUTF();
+            }
+            if (argc == 1 && args[0].equals(STOP)) {
+                out.writeByte(EXIT);
+                out.writeInt(0);
+                out.flush();
+                Files.deleteIfExists(SOCKET.toPath());
+                System.exit(0);
+            }
+            int status = run(args, out);
+            out.writeByte(EXIT);
+            out.writeInt(status);
+        } catch (IOException excp) {
+            /* the client went away, nothing to answer */
+        }
+    }
+
+    /** Run the command ARGS as Main would, sending its output to OUT,
+     *  and return its exit status. Main keeps its Repository between
+     *  commands, which reads the state again when another process
+     *  changed it. */
+    private static synchronized int run(String[] args, DataOutputStream out) {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        PrintStream clientOut = new PrintStream(new BufferedOutputStream(
+                new FrameStream(out, STDOUT), 1 << 16), false);
+        PrintStream clientErr = new PrintStream(new FrameStream(out, STDERR), true);
+        System.setOut(clientOut);
+        System.setErr(clientErr);
+        int status = 0;
+        try {
+            Main.main(args);
+        } catch (Exit exit) {
+            status = exit.status;
+        } catch (RuntimeException | Error excp) {
+            excp.printStackTrace();
+            status = 1;
+        } finally {
+            clientOut.flush();
+            clientErr.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        return status;
+    }
+
+    /** An output stream sending what is written to it as frames of KIND. */
+    private static class FrameStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte kind;
+
+        FrameStream(DataOutputStream out, byte kind) {
+            this.out = out;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (out) {
+                out.writeByte(kind);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+}
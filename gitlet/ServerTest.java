@@ -0,0 +1,203 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/** Tests of commands run by a Server on behalf of Clients, each in a
+ *  process of its own, as they run from the command line.
+ *  @author Tianyi Xu
+ */
+public class ServerTest {
+
+    /** The output and exit status of a command. */
+    private static class Result {
+        final String out;
+        final String err;
+        final int status;
+
+        Result(String out, String err, int status) {
+            this.out = out;
+            this.err = err;
+            this.status = status;
+        }
+    }
+
+    /** Return a process running the class MAIN with ARGS in DIR, on the
+     *  class path of this one. */
+    private static Process start(File dir, String main, String... args) {
+        List<String> command = new ArrayList<>(List.of(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"), main));
+        command.addAll(List.of(args));
+        try {
+            return new ProcessBuilder(command).directory(dir).start();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Run the class MAIN with ARGS in DIR and return what it printed. */
+    private static Result run(File dir, String main, String... args) {
+        Process process = start(dir, main, args);
+        try {
+            process.getOutputStream().close();
+            String out = new String(process.getInputStream().readAllBytes(),
+                    StandardCharsets.UTF_8);
+            String err = new String(process.getErrorStream().readAllBytes(),
+                    StandardCharsets.UTF_8);
+            assertTrue(main + " " + String.join(" ", args),
+                    process.waitFor(60, TimeUnit.SECONDS));
+            return new Result(out, err, process.exitValue());
+        } catch (IOException | InterruptedException excp) {
+            process.destroyForcibly();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Run the command ARGS through the Client in DIR. */
+    private static Result client(File dir, String... args) {
+        return run(dir, "gitlet.Client", args);
+    }
+
+    /** Return a Server started in DIR, once it accepts commands. */
+    private static Process startServer(File dir) throws InterruptedException {
+        Process server = start(dir, "gitlet.Server");
+        File socket = Utils.join(dir, ".gitlet", "daemon.sock");
+        for (int i = 0; i < 600 && !socket.exists(); i++) {
+            assertTrue(server.isAlive());
+            Thread.sleep(50);
+        }
+        assertTrue(socket.exists());
+        return server;
+    }
+
+    /** Stop SERVER, started in DIR, and check that it is gone. */
+    private static void stopServer(File dir, Process server) throws InterruptedException {
+        Result stopped = run(dir, "gitlet.Server", "stop");
+        assertEquals("", stopped.out);
+        assertTrue(server.waitFor(60, TimeUnit.SECONDS));
+        assertFalse(Utils.join(dir, ".gitlet", "daemon.sock").exists());
+        assertEquals(String.format("No server is running.%n"),
+                run(dir, "gitlet.Server", "stop").out);
+    }
+
+    @Test
+    public void commandsRunInTheServer() throws InterruptedException {
+        Repository repo = UnitTest.scratchRepository();
+        File dir = repo.root;
+        Process server = startServer(dir);
+        try {
+            assertEquals(String.format("A server is already running.%n"),
+                    run(dir, "gitlet.Server").out);
+
+            Utils.writeContents(new File(dir, "f.txt"), "one\n");
+            assertEquals("", client(dir, "add", "f.txt").out);
+            Result committed = client(dir, "commit", "one");
+            assertEquals("", committed.out + committed.err);
+            assertEquals(0, committed.status);
+            Result log = client(dir, "log");
+            assertTrue(log.out, log.out.startsWith("==="));
+            assertTrue(log.out, log.out.contains(String.format("%none%n")));
+            assertTrue(log.out, log.out.contains("initial commit"));
+
+            /* the repository read by another process sees what it did */
+            Repository reopened = new Repository(dir);
+            reopened.makeCurrent();
+            assertEquals("one", reopened.log().get(0).getMessage());
+            assertEquals(List.of(), reopened.status().staged);
+        } finally {
+            if (server.isAlive()) {
+                stopServer(dir, server);
+            }
+            server.destroyForcibly();
+        }
+    }
+
+    @Test
+    public void exitEndsTheCommandButNotTheServer() throws InterruptedException {
+        Repository repo = UnitTest.scratchRepository();
+        File dir = repo.root;
+        Process server = startServer(dir);
+        try {
+            /* each of these ends with Main.exit, which the server turns
+             * into the exit status of the client */
+            for (String[] args : List.of(new String[] {"commit"},
+                    new String[] {"no-such-command"}, new String[0])) {
+                Result result = client(dir, args);
+                assertEquals(run(dir, "gitlet.Main", args).out, result.out);
+                assertEquals(0, result.status);
+                assertTrue(server.isAlive());
+            }
+            Result failed = client(dir, "checkout", "no-such-branch");
+            assertEquals(String.format("No such branch exists.%n"), failed.out);
+
+            Utils.writeContents(new File(dir, "f.txt"), "one\n");
+            client(dir, "add", "f.txt");
+            assertEquals("", client(dir, "commit", "after the errors").out);
+            assertTrue(client(dir, "log").out.contains("after the errors"));
+        } finally {
+            if (server.isAlive()) {
+                stopServer(dir, server);
+            }
+            server.destroyForcibly();
+        }
+    }
+
+    @Test
+    public void concurrentClientsRunOneAfterAnother() throws InterruptedException {
+        Repository repo = UnitTest.scratchRepository();
+        File dir = repo.root;
+        Process server = startServer(dir);
+        try {
+            List<Thread> threads = new ArrayList<>();
+            List<Throwable> errors = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                String branch = "b" + t;
+                Thread thread = new Thread(() -> {
+                    try {
+                        assertEquals("", client(dir, "branch", branch).out);
+                    } catch (Throwable excp) {
+                        synchronized (errors) {
+                            errors.add(excp);
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(List.of(), errors);
+            String status = client(dir, "status").out;
+            assertTrue(status, status.startsWith(String.format(
+                    "=== Branches ===%nb0%nb1%nb2%nb3%n*master%n")));
+        } finally {
+            if (server.isAlive()) {
+                stopServer(dir, server);
+            }
+            server.destroyForcibly();
+        }
+    }
+
+    @Test
+    public void clientRunsTheCommandItselfWithoutAServer() {
+        Repository repo = UnitTest.scratchRepository();
+        File dir = repo.root;
+        /* as a server that died leaves its socket */
+        Utils.writeContents(Utils.join(dir, ".gitlet", "daemon.sock"), "");
+        assertEquals(run(dir, "gitlet.Main", "log").out, client(dir, "log").out);
+        assertEquals(String.format("No such branch exists.%n"),
+                client(dir, "checkout", "no-such-branch").out);
+        assertEquals(String.format("No server is running.%n"),
+                run(dir, "gitlet.Server", "stop").out);
+    }
+}
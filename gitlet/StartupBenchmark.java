@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Benchmark of the startup of gitlet commands with and without the
+ *  AppCDS archive built by 'make cds'.  Usage:
+ *      java gitlet.StartupBenchmark JAR ARCHIVE [RUNS]
+ *  Each command runs RUNS times (default 20) in a fresh JVM in a small
+ *  scratch repository, alternating between the two setups, and the mean
+ *  wall time of each is reported together with what the archive saves.
+ *  @author Tianyi Xu
+ */
+public class StartupBenchmark {
+    /* The commands timed, none of which changes the repository for good */
+    private static final String[][] COMMANDS = {
+        {"status"},
+        {"log"},
+        {"global-log"},
+        {"find", "initial commit"},
+        {"add", "f0.txt"},
+        {"branch", "bench"},
+        {"rm-branch", "bench"},
+        {"checkout", "--", "f1.txt"},
+    };
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: java gitlet.StartupBenchmark JAR ARCHIVE [RUNS]");
+            System.exit(1);
+        }
+        String jar = new File(args[0]).getAbsolutePath();
+        String archive = new File(args[1]).getAbsolutePath();
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        String java = Utils.join(new File(System.getProperty("java.home")), "bin", "java").getPath();
+
+        List<String> plain = Arrays.asList(java, "-cp", jar, "gitlet.Main");
+        List<String> cds = Arrays.asList(java, "-XX:SharedArchiveFile=" + archive,
+                "-Xshare:on", "-cp", jar, "gitlet.Main");
+
+        File repo = Files.createTempDirectory("gitlet-startup").toFile();
+        run(plain, repo, "init");
+        for (int i = 0; i < 10; i++) {
+            Utils.writeContents(new File(repo, "f" + i + ".txt"), "version 1 of " + i + "\n");
+            run(plain, repo, "add", "f" + i + ".txt");
+            run(plain, repo, "commit", "file " + i);
+        }
+
+        System.out.printf("%-22s %10s %10s %10s%n", "command", "plain ms", "cds ms", "saved");
+        double totalPlain = 0;
+        double totalCds = 0;
+        for (String[] command : COMMANDS) {
+            long plainNanos = 0;
+            long cdsNanos = 0;
+            for (int r = 0; r < runs; r++) {
+                plainNanos += run(plain, repo, command);
+                cdsNanos += run(cds, repo, command);
+            }
+            double p = plainNanos / 1e6 / runs;
+            double c = cdsNanos / 1e6 / runs;
+            totalPlain += p;
+            totalCds += c;
+            System.out.printf("%-22s %10.1f %10.1f %9.0f%%%n",
+                    String.join(" ", command), p, c, 100 * (p - c) / p);
+        }
+        System.out.printf("%-22s %10.1f %10.1f %9.0f%%%n", "all",
+                totalPlain, totalCds, 100 * (totalPlain - totalCds) / totalPlain);
+    }
+
+    /** Run gitlet with the command line PREFIX followed by ARGS in DIR and
+     *  return its wall time in nanoseconds. */
+    private static long run(List<String> prefix, File dir, String... args)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(prefix);
+        command.addAll(Arrays.asList(args));
+        File output = new File(dir.getParentFile(), dir.getName() + ".out");
+        long start = System.nanoTime();
+        Process p = new ProcessBuilder(command).directory(dir)
+                .redirectErrorStream(true).redirectOutput(output).start();
+        int status = p.waitFor();
+        long elapsed = System.nanoTime() - start;
+        if (status != 0) {
+            throw new IllegalStateException(String.join(" ", command) + " failed: "
+                    + new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8));
+        }
+        return elapsed;
+    }
+}
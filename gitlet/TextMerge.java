@@ -0,0 +1,187 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A three-way merge of text files line by line, as diff3 does it. The
+ *  changes of both sides are taken from diffs against the version at
+ *  the split point. Changes to different lines are both kept; where the
+ *  two sides changed the same lines, or lines next to each other,
+ *  differently, both versions of those lines are kept between conflict
+ *  markers:
+ *      <<<<<<< HEAD
+ *      lines of the current branch
+ *      =======
+ *      lines of the given branch
+ *      >>>>>>>
+ *  The last marker of a conflict at the end of the file has no newline.
+ *  @author Tianyi Xu
+ */
+class TextMerge {
+    private static final byte[] OURS = "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEPARATOR = "=======\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] END = ">>>>>>>".getBytes(StandardCharsets.UTF_8);
+
+    /** The merged text. */
+    final byte[] content;
+    /** True if some lines conflict. */
+    final boolean conflict;
+
+    private TextMerge(byte[] content, boolean conflict) {
+        this.content = content;
+        this.conflict = conflict;
+    }
+
+    /** Return the merge of OURS and THEIRS, both changed from BASE. */
+    static TextMerge merge(byte[] base, byte[] ours, byte[] theirs) {
+        LineDiff.Lines[] lines = LineDiff.split(base, ours, theirs);
+        return new Builder(lines[0], lines[1], lines[2]).merge();
+    }
+
+    /** Return the whole of OURS and the whole of THEIRS between conflict
+     *  markers, for files that can't be merged line by line. */
+    static TextMerge conflict(byte[] ours, byte[] theirs) {
+        Utils.Bytes out = new Utils.Bytes(ours.length + theirs.length + 32);
+        appendConflict(out, ours, 0, ours.length, theirs, 0, theirs.length, true);
+        return new TextMerge(out.toByteArray(), true);
+    }
+
+    /** Return true if TEXT looks like text rather than binary data. */
+    static boolean isText(byte[] text) {
+        for (byte b : text) {
+            if (b == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The state of one merge. */
+    private static class Builder {
+        private final LineDiff.Lines base;
+        private final LineDiff.Lines ours;
+        private final LineDiff.Lines theirs;
+        /* the changes of each side: base start, base end, side start, side end */
+        private final List<int[]> ourHunks;
+        private final List<int[]> theirHunks;
+        private final Utils.Bytes out;
+
+        Builder(LineDiff.Lines base, LineDiff.Lines ours, LineDiff.Lines theirs) {
+            this.base = base;
+            this.ours = ours;
+            this.theirs = theirs;
+            ourHunks = hunks(base, ours);
+            theirHunks = hunks(base, theirs);
+            out = new Utils.Bytes(Math.max(ours.text.length, theirs.text.length) + 64);
+        }
+
+        TextMerge merge() {
+            boolean conflict = false;
+            int i = 0;
+            int j = 0;
+            /* base lines copied so far, and how far each side's line
+             * numbers are ahead of the base's after the changes so far */
+            int copied = 0;
+            int ourShift = 0;
+            int theirShift = 0;
+            while (i < ourHunks.size() || j < theirHunks.size()) {
+                boolean oursFirst = j == theirHunks.size()
+                        || i < ourHunks.size() && ourHunks.get(i)[0] <= theirHunks.get(j)[0];
+                int start = (oursFirst ? ourHunks.get(i) : theirHunks.get(j))[0];
+                int end = start;
+                int i1 = i;
+                int j1 = j;
+                /* take every change that overlaps or touches the region */
+                boolean grew = true;
+                while (grew) {
+                    grew = false;
+                    if (i1 < ourHunks.size() && ourHunks.get(i1)[0] <= end) {
+                        end = Math.max(end, ourHunks.get(i1++)[1]);
+                        grew = true;
+                    }
+                    if (j1 < theirHunks.size() && theirHunks.get(j1)[0] <= end) {
+                        end = Math.max(end, theirHunks.get(j1++)[1]);
+                        grew = true;
+                    }
+                }
+                append(base, copied, start);
+
+                int ourStart = start + ourShift;
+                ourShift += shift(ourHunks, i, i1);
+                int ourEnd = end + ourShift;
+                int theirStart = start + theirShift;
+                theirShift += shift(theirHunks, j, j1);
+                int theirEnd = end + theirShift;
+                if (i1 == i) {
+                    append(theirs, theirStart, theirEnd);
+                } else if (j1 == j || same(ourStart, ourEnd, theirStart, theirEnd)) {
+                    append(ours, ourStart, ourEnd);
+                } else {
+                    conflict = true;
+                    appendConflict(out, ours.text, ours.start(ourStart), ours.start(ourEnd),
+                            theirs.text, theirs.start(theirStart), theirs.start(theirEnd),
+                            end == base.size() && ourEnd == ours.size()
+                                    && theirEnd == theirs.size());
+                }
+                copied = end;
+                i = i1;
+                j = j1;
+            }
+            append(base, copied, base.size());
+            return new TextMerge(out.toByteArray(), conflict);
+        }
+
+        /** Return the lines the hunks [FROM, TO) of HUNKS add in all. */
+        private static int shift(List<int[]> hunks, int from, int to) {
+            int shift = 0;
+            for (int k = from; k < to; k++) {
+                int[] h = hunks.get(k);
+                shift += (h[3] - h[2]) - (h[1] - h[0]);
+            }
+            return shift;
+        }
+
+        private boolean same(int ourStart, int ourEnd, int theirStart, int theirEnd) {
+            return Arrays.equals(ours.text, ours.start(ourStart), ours.start(ourEnd),
+                    theirs.text, theirs.start(theirStart), theirs.start(theirEnd));
+        }
+
+        /** Append lines [FROM, TO) of LINES. */
+        private void append(LineDiff.Lines lines, int from, int to) {
+            out.write(lines.text, lines.start(from), lines.start(to) - lines.start(from));
+        }
+
+        private static List<int[]> hunks(LineDiff.Lines a, LineDiff.Lines b) {
+            List<int[]> hunks = new ArrayList<>();
+            LineDiff.diff(a, b, (aStart, aEnd, bStart, bEnd) ->
+                    hunks.add(new int[] {aStart, aEnd, bStart, bEnd}));
+            return hunks;
+        }
+    }
+
+    /** Append OURS[OURSTART, OUREND) and THEIRS[THEIRSTART, THEIREND)
+     *  between conflict markers to OUT, ending with a newline unless
+     *  ATEND. */
+    private static void appendConflict(Utils.Bytes out, byte[] ours, int ourStart, int ourEnd,
+                                       byte[] theirs, int theirStart, int theirEnd,
+                                       boolean atEnd) {
+        out.write(OURS, 0, OURS.length);
+        appendLines(out, ours, ourStart, ourEnd);
+        out.write(SEPARATOR, 0, SEPARATOR.length);
+        appendLines(out, theirs, theirStart, theirEnd);
+        out.write(END, 0, END.length);
+        if (!atEnd) {
+            out.write('\n');
+        }
+    }
+
+    /** Append TEXT[START, END) to OUT, with a newline if it lacks one. */
+    private static void appendLines(Utils.Bytes out, byte[] text, int start, int end) {
+        out.write(text, start, end - start);
+        if (end > start && text[end - 1] != '\n') {
+            out.write('\n');
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/** Tests of three-way merges of text, clean and conflicting.
+ *  @author Tianyi Xu
+ */
+public class TextMergeTest {
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Check that merging OURS and THEIRS from BASE gives EXPECTED, with a
+     *  conflict if CONFLICT. */
+    private static void check(String base, String ours, String theirs,
+                              String expected, boolean conflict) {
+        TextMerge merged = TextMerge.merge(bytes(base), bytes(ours), bytes(theirs));
+        assertEquals(expected, new String(merged.content, StandardCharsets.UTF_8));
+        assertEquals(conflict, merged.conflict);
+    }
+
+    @Test
+    public void changesToDifferentLinesMergeCleanly() {
+        check("a\nb\nc\nd\ne\n", "A\nb\nc\nd\ne\n", "a\nb\nc\nd\nE\n",
+                "A\nb\nc\nd\nE\n", false);
+        check("a\nb\nc\nd\ne\n", "a\nb\nc\nd\nx\ny\ne\n", "a\nd\ne\n",
+                "a\nd\nx\ny\ne\n", false);
+    }
+
+    @Test
+    public void oneSidedChangesAreTaken() {
+        check("a\nb\nc\n", "a\nb\nc\n", "a\nB\nc\n", "a\nB\nc\n", false);
+        check("a\nb\nc\n", "a\nc\n", "a\nb\nc\n", "a\nc\n", false);
+        check("", "", "new\n", "new\n", false);
+    }
+
+    @Test
+    public void sameChangeOnBothSidesIsTakenOnce() {
+        check("a\nb\nc\n", "a\nx\nc\n", "a\nx\nc\n", "a\nx\nc\n", false);
+    }
+
+    @Test
+    public void differentChangesToTheSameLinesConflict() {
+        check("a\nb\nc\n", "a\nours\nc\n", "a\ntheirs\nc\n",
+                "a\n<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>>\nc\n", true);
+    }
+
+    @Test
+    public void changesToNeighbouringLinesConflict() {
+        check("a\nb\nc\nd\n", "a\nB\nc\nd\n", "a\nb\nC\nd\n",
+                "a\n<<<<<<< HEAD\nB\nc\n=======\nb\nC\n>>>>>>>\nd\n", true);
+    }
+
+    @Test
+    public void deletionAgainstAChangeConflicts() {
+        check("a\nb\nc\n", "a\nc\n", "a\nB\nc\n",
+                "a\n<<<<<<< HEAD\n=======\nB\n>>>>>>>\nc\n", true);
+    }
+
+    @Test
+    public void conflictAtTheEndHasNoLastNewline() {
+        check("a\nb\n", "a\nours\n", "a\ntheirs",
+                "a\n<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>>", true);
+    }
+
+    @Test
+    public void wholeFileConflict() {
+        TextMerge merged = TextMerge.conflict(bytes("ours"), new byte[0]);
+        assertEquals("<<<<<<< HEAD\nours\n=======\n>>>>>>>",
+                new String(merged.content, StandardCharsets.UTF_8));
+        assertTrue(merged.conflict);
+    }
+
+    @Test
+    public void binaryIsNotText() {
+        assertTrue(TextMerge.isText(bytes("plain\ntext\n")));
+        assertFalse(TextMerge.isText(new byte[] {'a', 0, 'b'}));
+    }
+}
@@ -0,0 +1,272 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A snapshot of one directory: the names of its files and
+ *  subdirectories mapped to the ids of their blobs and trees. A tree
+ *  is content addressed, so a directory that doesn't change between two
+ *  commits is the same tree object in both of them.
+ *
+ *  Encoding: "tree", entry count int, then per entry sorted by name:
+ *  kind byte, name string, id as 40 hex characters.
+ *  @author Tianyi Xu
+ */
+class Tree {
+    /** An entry of a tree, either a file or a subdirectory. */
+    static class Entry {
+        final boolean isTree;
+        final String id;
+
+        Entry(boolean isTree, String id) {
+            this.isTree = isTree;
+            this.id = id;
+        }
+    }
+
+    /* Entry kinds in the encoding */
+    private static final byte BLOB = 0;
+    private static final byte TREE = 1;
+
+    /* Trees recently read, trees never change once written */
+    private static final Map<String, Tree> CACHE = Collections.synchronizedMap(
+        new LinkedHashMap<String, Tree>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tree> eldest) {
+                return size() > 4096;
+            }
+        });
+
+    /** The tree of an empty directory. */
+    static final Tree EMPTY = new Tree(new TreeMap<>());
+
+    /* Name -> entry, sorted by name */
+    private final SortedMap<String, Entry> entries;
+    private final byte[] encoded;
+    private final String id;
+
+    private Tree(SortedMap<String, Entry> entries) {
+        this(entries, encode(entries));
+    }
+
+    private Tree(SortedMap<String, Entry> entries, byte[] encoded) {
+        this.entries = Collections.unmodifiableSortedMap(entries);
+        this.encoded = encoded;
+        this.id = Utils.sha1(encoded);
+    }
+
+    String getID() {
+        return id;
+    }
+
+    SortedMap<String, Entry> getEntries() {
+        return entries;
+    }
+
+    /** Store this tree unless it is already stored. */
+    void save() {
+        Repository.current().trees.write(id, encoded);
+        CACHE.put(id, this);
+    }
+
+    /** Return the tree TREEID, or the empty tree if TREEID is null. */
+    static Tree read(String treeId) {
+        if (treeId == null || treeId.equals(EMPTY.id)) {
+            return EMPTY;
+        }
+        Tree t = CACHE.get(treeId);
+        if (t == null) {
+            t = decode(Repository.current().trees.read(treeId));
+            CACHE.put(treeId, t);
+        }
+        return t;
+    }
+
+    /** Return the id of the tree that results from applying CHANGES to
+     *  the tree TREEID. CHANGES maps '/' separated paths to the id of
+     *  their new blob, or to null for paths to remove. Only the trees on
+     *  the paths of the changes are written, and directories left empty
+     *  are dropped. */
+    static String update(String treeId, Map<String, String> changes) {
+        TreeMap<String, Entry> entries = new TreeMap<>(read(treeId).entries);
+        Map<String, Map<String, String>> subChanges = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                subChanges.computeIfAbsent(path.substring(0, slash), k -> new TreeMap<>())
+                        .put(path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                entries.remove(path);
+            } else {
+                entries.put(path, new Entry(false, change.getValue()));
+            }
+        }
+
+        for (Map.Entry<String, Map<String, String>> sub : subChanges.entrySet()) {
+            Entry old = entries.get(sub.getKey());
+            String subId = update(old != null && old.isTree ? old.id : null, sub.getValue());
+            if (old != null && !old.isTree && subId.equals(EMPTY.id)) {
+                /* a file that replaced the directory in the same change */
+                continue;
+            } else if (subId.equals(EMPTY.id)) {
+                entries.remove(sub.getKey());
+            } else {
+                entries.put(sub.getKey(), new Entry(true, subId));
+            }
+        }
+
+        if (entries.isEmpty()) {
+            return EMPTY.id;
+        }
+        Tree result = new Tree(entries);
+        result.save();
+        return result.id;
+    }
+
+    /** Return the blob id of the file PATH, '/' separated, in the tree
+     *  TREEID, or null if there is no such file. Only the trees on the
+     *  path are read. */
+    static String blob(String treeId, String path) {
+        int start = 0;
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', start)) {
+            Entry dir = read(treeId).entries.get(path.substring(start, slash));
+            if (dir == null || !dir.isTree) {
+                return null;
+            }
+            treeId = dir.id;
+            start = slash + 1;
+        }
+        Entry file = read(treeId).entries.get(path.substring(start));
+        return file == null || file.isTree ? null : file.id;
+    }
+
+    /** Return every file of the tree TREEID, mapping its '/' separated
+     *  path to its blob id, sorted by path. */
+    static Map<String, String> flatten(String treeId) {
+        Map<String, String> files = new TreeMap<>();
+        flatten(treeId, "", files);
+        return files;
+    }
+
+    private static void flatten(String treeId, String prefix, Map<String, String> files) {
+        for (Map.Entry<String, Entry> e : read(treeId).entries.entrySet()) {
+            if (e.getValue().isTree) {
+                flatten(e.getValue().id, prefix + e.getKey() + "/", files);
+            } else {
+                files.put(prefix + e.getKey(), e.getValue().id);
+            }
+        }
+    }
+
+    /** Return the files that differ between the trees A and B, mapping
+     *  each path to {blob id in A, blob id in B}, where a missing file is
+     *  null. Subtrees with the same id in A and B are not looked into. */
+    static SortedMap<String, String[]> diff(String a, String b) {
+        SortedMap<String, String[]> changes = new TreeMap<>();
+        diff(a, b, "", changes);
+        return changes;
+    }
+
+    private static void diff(String a, String b, String prefix,
+                             Map<String, String[]> changes) {
+        if (Objects.equals(a, b)) {
+            return;
+        }
+        SortedMap<String, Entry> as = read(a).entries;
+        SortedMap<String, Entry> bs = read(b).entries;
+        TreeSet<String> names = new TreeSet<>(as.keySet());
+        names.addAll(bs.keySet());
+        for (String name : names) {
+            Entry x = as.get(name);
+            Entry y = bs.get(name);
+            String xBlob = x != null && !x.isTree ? x.id : null;
+            String yBlob = y != null && !y.isTree ? y.id : null;
+            String xTree = x != null && x.isTree ? x.id : null;
+            String yTree = y != null && y.isTree ? y.id : null;
+            if (!Objects.equals(xBlob, yBlob)) {
+                changes.put(prefix + name, new String[] {xBlob, yBlob});
+            }
+            if (!Objects.equals(xTree, yTree)) {
+                diff(xTree, yTree, prefix + name + "/", changes);
+            }
+        }
+    }
+
+    /** Return the files that differ between A and B, which map paths to
+     *  blob ids, as diff of two trees does. Both maps are walked in order
+     *  at once. */
+    static SortedMap<String, String[]> diff(SortedMap<String, String> a,
+                                            SortedMap<String, String> b) {
+        SortedMap<String, String[]> changes = new TreeMap<>();
+        Iterator<Map.Entry<String, String>> as = a.entrySet().iterator();
+        Iterator<Map.Entry<String, String>> bs = b.entrySet().iterator();
+        Map.Entry<String, String> x = as.hasNext() ? as.next() : null;
+        Map.Entry<String, String> y = bs.hasNext() ? bs.next() : null;
+        while (x != null || y != null) {
+            int cmp = x == null ? 1 : y == null ? -1 : x.getKey().compareTo(y.getKey());
+            if (cmp < 0) {
+                changes.put(x.getKey(), new String[] {x.getValue(), null});
+            } else if (cmp > 0) {
+                changes.put(y.getKey(), new String[] {null, y.getValue()});
+            } else if (!x.getValue().equals(y.getValue())) {
+                changes.put(x.getKey(), new String[] {x.getValue(), y.getValue()});
+            }
+            if (cmp <= 0) {
+                x = as.hasNext() ? as.next() : null;
+            }
+            if (cmp >= 0) {
+                y = bs.hasNext() ? bs.next() : null;
+            }
+        }
+        return changes;
+    }
+
+    private static byte[] encode(SortedMap<String, Entry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeBytes("tree");
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                out.writeByte(e.getValue().isTree ? TREE : BLOB);
+                Utils.writeString(out, e.getKey());
+                out.writeBytes(e.getValue().id);
+            }
+            out.close();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding tree.");
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Tree decode(byte[] encoded) {
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            in.skipBytes(4);
+            int n = in.readInt();
+            byte[] id = new byte[Utils.UID_LENGTH];
+            for (int i = 0; i < n; i++) {
+                boolean isTree = in.readByte() == TREE;
+                String name = Utils.readString(in);
+                in.readFully(id);
+                entries.put(name, new Entry(isTree, new String(id, StandardCharsets.US_ASCII)));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Corrupted tree.");
+        }
+        return new Tree(entries, encoded);
+    }
+}
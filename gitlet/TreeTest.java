@@ -0,0 +1,98 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/** Tests of the tree objects of nested directories.
+ *  @author Tianyi Xu
+ */
+public class TreeTest {
+
+    private static final String X = Utils.sha1("x");
+    private static final String Y = Utils.sha1("y");
+    private static final String Z = Utils.sha1("z");
+
+    /** Return the changes of the alternating paths and blob ids of
+     *  PATHSANDIDS, where a null id removes the path. */
+    private static Map<String, String> changes(String... pathsAndIds) {
+        Map<String, String> changes = new HashMap<>();
+        for (int i = 0; i < pathsAndIds.length; i += 2) {
+            changes.put(pathsAndIds[i], pathsAndIds[i + 1]);
+        }
+        return changes;
+    }
+
+    @Test
+    public void nestedFilesRoundTrip() {
+        UnitTest.scratchRepository();
+        String tree = Tree.update(null, changes("a/b/c.txt", X, "a/d.txt", Y, "e.txt", Z));
+
+        Map<String, String> expected = new TreeMap<>(changes(
+                "a/b/c.txt", X, "a/d.txt", Y, "e.txt", Z));
+        assertEquals(expected, Tree.flatten(tree));
+        assertEquals(X, Tree.blob(tree, "a/b/c.txt"));
+        assertNull(Tree.blob(tree, "a/b"));
+        assertNull(Tree.blob(tree, "a/b/missing.txt"));
+    }
+
+    @Test
+    public void unchangedDirectoriesKeepTheirTrees() {
+        UnitTest.scratchRepository();
+        String before = Tree.update(null, changes("a/b/c.txt", X, "d/e.txt", Y));
+        String after = Tree.update(before, changes("d/e.txt", Z));
+
+        assertEquals(Tree.read(before).getEntries().get("a").id,
+                Tree.read(after).getEntries().get("a").id);
+        assertNotEquals(Tree.read(before).getEntries().get("d").id,
+                Tree.read(after).getEntries().get("d").id);
+    }
+
+    @Test
+    public void emptyDirectoriesAreDropped() {
+        UnitTest.scratchRepository();
+        String tree = Tree.update(null, changes("a/b/c.txt", X, "d.txt", Y));
+        String removed = Tree.update(tree, changes("a/b/c.txt", null));
+
+        assertEquals(Tree.update(null, changes("d.txt", Y)), removed);
+        assertEquals(Tree.EMPTY.getID(), Tree.update(removed, changes("d.txt", null)));
+    }
+
+    @Test
+    public void fileReplacesDirectory() {
+        UnitTest.scratchRepository();
+        String tree = Tree.update(null, changes("a/b", X));
+        String replaced = Tree.update(tree, changes("a/b", null, "a", Y));
+
+        assertEquals(new TreeMap<>(changes("a", Y)), Tree.flatten(replaced));
+    }
+
+    @Test
+    public void directoryReplacesFile() {
+        UnitTest.scratchRepository();
+        String tree = Tree.update(null, changes("a", X));
+        String replaced = Tree.update(tree, changes("a", null, "a/b", Y));
+
+        assertEquals(new TreeMap<>(changes("a/b", Y)), Tree.flatten(replaced));
+    }
+
+    @Test
+    public void diffSkipsSharedDirectories() {
+        UnitTest.scratchRepository();
+        String before = Tree.update(null, changes("a/b/c.txt", X, "d/e.txt", Y));
+        String after = Tree.update(before, changes("d/e.txt", Z, "d/f.txt", X,
+                "a/b/c.txt", null, "a/b", Y));
+
+        Map<String, String[]> diff = Tree.diff(before, after);
+        assertEquals(4, diff.size());
+        assertArrayEquals(new String[] {X, null}, diff.get("a/b/c.txt"));
+        assertArrayEquals(new String[] {null, Y}, diff.get("a/b"));
+        assertArrayEquals(new String[] {Y, Z}, diff.get("d/e.txt"));
+        assertArrayEquals(new String[] {null, X}, diff.get("d/f.txt"));
+        assertTrue(Tree.diff(after, after).isEmpty());
+    }
+}
@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Writes the differences between two versions of a file in the unified
+ *  format of diff -u, as git diff does:
+ *      diff --git a/PATH b/PATH
+ *      --- a/PATH
+ *      +++ b/PATH
+ *      @@ -START,COUNT +START,COUNT @@
+ *       a line both versions have
+ *      -a line of the old version
+ *      +a line of the new version
+ *  A missing version is /dev/null. The changes come from LineDiff in
+ *  order and are written as they come: only the changes of the hunk being
+ *  written, those less than two contexts apart, are held at a time.
+ *  @author Tianyi Xu
+ */
+class UnifiedDiff implements LineDiff.Hunks {
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    private static final byte[] NO_NEWLINE =
+            "\n\\ No newline at end of file\n".getBytes(StandardCharsets.UTF_8);
+
+    private final OutputStream out;
+    private final LineDiff.Lines a;
+    private final LineDiff.Lines b;
+    /* the changes of the hunk being collected: a start, a end, b start, b end */
+    private final List<int[]> changes = new ArrayList<>();
+
+    private UnifiedDiff(OutputStream out, LineDiff.Lines a, LineDiff.Lines b) {
+        this.out = out;
+        this.a = a;
+        this.b = b;
+    }
+
+    /** Write the diff of OLD and NEW, the versions of PATH, to OUT. A
+     *  missing version is null. */
+    static void write(OutputStream out, String path, byte[] old, byte[] now) {
+        print(out, "diff --git a/%s b/%s\n", path, path);
+        byte[] a = old == null ? new byte[0] : old;
+        byte[] b = now == null ? new byte[0] : now;
+        if (!TextMerge.isText(a) || !TextMerge.isText(b)) {
+            print(out, "Binary files %s and %s differ\n",
+                    old == null ? "/dev/null" : "a/" + path,
+                    now == null ? "/dev/null" : "b/" + path);
+            return;
+        }
+        print(out, "--- %s\n+++ %s\n",
+                old == null ? "/dev/null" : "a/" + path,
+                now == null ? "/dev/null" : "b/" + path);
+        LineDiff.Lines[] lines = LineDiff.split(a, b);
+        UnifiedDiff diff = new UnifiedDiff(out, lines[0], lines[1]);
+        LineDiff.diff(lines[0], lines[1], diff);
+        diff.flush();
+    }
+
+    @Override
+    public void hunk(int aStart, int aEnd, int bStart, int bEnd) {
+        if (!changes.isEmpty() && aStart - changes.get(changes.size() - 1)[1] > 2 * CONTEXT) {
+            flush();
+        }
+        changes.add(new int[] {aStart, aEnd, bStart, bEnd});
+    }
+
+    /** Write the hunk of the changes collected so far. */
+    private void flush() {
+        if (changes.isEmpty()) {
+            return;
+        }
+        int[] first = changes.get(0);
+        int[] last = changes.get(changes.size() - 1);
+        int aStart = Math.max(0, first[0] - CONTEXT);
+        int aEnd = Math.min(a.size(), last[1] + CONTEXT);
+        int bStart = first[2] - (first[0] - aStart);
+        int bEnd = last[3] + (aEnd - last[1]);
+        print(out, "@@ -%s +%s @@\n", range(aStart, aEnd), range(bStart, bEnd));
+        int i = aStart;
+        for (int[] change : changes) {
+            lines(' ', a, i, change[0]);
+            lines('-', a, change[0], change[1]);
+            lines('+', b, change[2], change[3]);
+            i = change[1];
+        }
+        lines(' ', a, i, aEnd);
+        changes.clear();
+    }
+
+    /** Return the range of lines [START, END) as a hunk header shows it:
+     *  the first line counting from 1 and the number of lines, the number
+     *  left out when it is 1, and the line before if there are none. */
+    private static String range(int start, int end) {
+        if (end - start == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (end == start ? start : start + 1) + "," + (end - start);
+    }
+
+    /** Write lines [FROM, TO) of LINES, each after PREFIX. */
+    private void lines(char prefix, LineDiff.Lines lines, int from, int to) {
+        try {
+            for (int i = from; i < to; i++) {
+                int start = lines.start(i);
+                int end = lines.start(i + 1);
+                out.write(prefix);
+                out.write(lines.text, start, end - start);
+                if (lines.text[end - 1] != '\n') {
+                    out.write(NO_NEWLINE);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static void print(OutputStream out, String format, Object... args) {
+        try {
+            out.write(String.format(format, args).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
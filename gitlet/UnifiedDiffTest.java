@@ -0,0 +1,70 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/** Tests of the unified diffs of the diff command.
+ *  @author Tianyi Xu
+ */
+public class UnifiedDiffTest {
+
+    private static final String TEN = "1\n2\n3\n4\n5\n6\n7\n8\n9\n10\n";
+
+    /** Return the diff of OLD and NOW, the versions of f.txt. */
+    private static String diff(String old, String now) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        UnifiedDiff.write(out, "f.txt",
+                old == null ? null : old.getBytes(StandardCharsets.UTF_8),
+                now == null ? null : now.getBytes(StandardCharsets.UTF_8));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void changedLineWithContext() {
+        assertEquals("diff --git a/f.txt b/f.txt\n--- a/f.txt\n+++ b/f.txt\n"
+                + "@@ -3,7 +3,7 @@\n 3\n 4\n 5\n-6\n+six\n 7\n 8\n 9\n",
+                diff(TEN, TEN.replace("6\n", "six\n")));
+    }
+
+    @Test
+    public void nearbyChangesShareAHunk() {
+        assertEquals("diff --git a/f.txt b/f.txt\n--- a/f.txt\n+++ b/f.txt\n"
+                + "@@ -1,10 +1,10 @@\n-1\n+one\n 2\n 3\n 4\n 5\n 6\n 7\n-8\n+eight\n 9\n 10\n",
+                diff(TEN, TEN.replace("1\n", "one\n").replace("8\n", "eight\n")));
+    }
+
+    @Test
+    public void distantChangesGetTheirOwnHunks() {
+        String old = TEN + TEN;
+        String now = "one\n" + old.substring(2, old.length() - 3) + "ten\n";
+        assertEquals("diff --git a/f.txt b/f.txt\n--- a/f.txt\n+++ b/f.txt\n"
+                + "@@ -1,4 +1,4 @@\n-1\n+one\n 2\n 3\n 4\n"
+                + "@@ -17,4 +17,4 @@\n 7\n 8\n 9\n-10\n+ten\n",
+                diff(old, now));
+    }
+
+    @Test
+    public void addedAndRemovedFiles() {
+        assertEquals("diff --git a/f.txt b/f.txt\n--- /dev/null\n+++ b/f.txt\n"
+                + "@@ -0,0 +1,2 @@\n+a\n+b\n", diff(null, "a\nb\n"));
+        assertEquals("diff --git a/f.txt b/f.txt\n--- a/f.txt\n+++ /dev/null\n"
+                + "@@ -1 +0,0 @@\n-a\n", diff("a\n", null));
+    }
+
+    @Test
+    public void lastLineWithoutNewline() {
+        assertEquals("diff --git a/f.txt b/f.txt\n--- a/f.txt\n+++ b/f.txt\n"
+                + "@@ -1 +1 @@\n-a\n\\ No newline at end of file\n+a\n",
+                diff("a", "a\n"));
+    }
+
+    @Test
+    public void binaryFiles() {
+        assertEquals("diff --git a/f.txt b/f.txt\nBinary files a/f.txt and b/f.txt differ\n",
+                diff("a\u0000", "b"));
+    }
+}
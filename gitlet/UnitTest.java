@@ -4,15 +4,95 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
 /** The suite of all JUnit tests for the gitlet package.
- *  @author
+ *  @author Tianyi Xu
  */
 public class UnitTest {
 
-    /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
+    /* Directories of the scratch repositories, deleted after the run */
+    private static final List<File> SCRATCH = new ArrayList<>();
+
+    /** Run the JUnit tests in the gitlet package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class));
+        int status = textui.runClasses(UnitTest.class, TreeTest.class,
+                MergeBaseTest.class, ReachabilityBitmapsTest.class, CodecTest.class,
+                ObjectIdTest.class, DeltaTest.class, EwahTest.class, LineDiffTest.class,
+                TextMergeTest.class, UnifiedDiffTest.class, GTTreeTest.class,
+                RepositoryTest.class, CommitIndexTest.class, PackFileTest.class,
+                ObjectStoreTest.class, IndexEntryTest.class, CommitLogTest.class,
+                ServerTest.class, CommitCacheTest.class, WorkersTest.class,
+                CommitGraphTest.class);
+        for (File dir : SCRATCH) {
+            delete(dir);
+        }
+        System.exit(status);
+    }
+
+    /** Return a new repository in an empty scratch directory, bound to
+     *  this thread. */
+    static Repository scratchRepository() {
+        Repository repo = Repository.init(scratchDirectory());
+        repo.makeCurrent();
+        return repo;
+    }
+
+    /** Return a new empty directory, deleted after the run. */
+    static File scratchDirectory() {
+        try {
+            File dir = Files.createTempDirectory("gitlet-test").toFile();
+            SCRATCH.add(dir);
+            return dir;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a scratch copy of the directory NAME under testing, which
+     *  is found on the class path, as the Makefile runs the tests with the
+     *  root of the project on it. */
+    static File fixture(String name) {
+        URL source = UnitTest.class.getResource("/testing/" + name);
+        if (source == null) {
+            throw new IllegalStateException("testing/" + name + " is not on the class path.");
+        }
+        File dir = scratchDirectory();
+        try (Stream<Path> paths = Files.walk(Paths.get(source.toURI()))) {
+            Path from = Paths.get(source.toURI());
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Path to = dir.toPath().resolve(from.relativize(path).toString());
+                if (!Files.isDirectory(path)) {
+                    Files.copy(path, to, StandardCopyOption.COPY_ATTRIBUTES);
+                } else if (!Files.exists(to)) {
+                    Files.createDirectory(to);
+                }
+            }
+        } catch (IOException | URISyntaxException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return dir;
+    }
+
+    /** Delete DIR and everything under it. */
+    private static void delete(File dir) {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException excp) {
+            /* left for the system to clean up */
+        }
     }
 
     /** A dummy test to avoid complaint. */
@@ -22,4 +102,3 @@ public class UnitTest {
 
 }
 
-
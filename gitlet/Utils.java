@@ -1,22 +1,30 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /** Assorted utilities.
@@ -29,36 +37,118 @@ class Utils {
     /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
     static final int UID_LENGTH = 40;
 
+    /** Files at least this long are read through a mapping of them. */
+    static final long MAP_THRESHOLD = 1 << 20;
+    /** Longest part of a file mapped at once. */
+    static final long MAP_CHUNK = 1 << 26;
+
+    /** A SHA-1 digest per thread, reused by every hash it computes. */
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(Utils::newDigest);
+
+    /** A buffer per thread for reading files piece by piece. */
+    static final ThreadLocal<ByteBuffer> IO_BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocate(1 << 16));
+
+    /** Part of the names of the temporary files of this process. */
+    private static final String TEMP_NAME =
+        Long.toHexString(new SecureRandom().nextLong() >>> 1);
+    /** Number of the temporary files of this process so far. */
+    private static final AtomicLong TEMP_COUNT = new AtomicLong();
+
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
+        MessageDigest md = digest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        }
+        return toHex(md.digest());
+    }
+
+    /** Returns the SHA-1 hash of the contents of FILE, read through a
+     *  channel, or a mapping for large files, rather than into an array
+     *  as large as the file.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static String sha1(File file) {
+        MessageDigest md = digest();
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long pos = 0; pos < size; pos += MAP_CHUNK) {
+                    md.update(channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                            Math.min(MAP_CHUNK, size - pos)));
+                }
+            } else {
+                ByteBuffer buffer = IO_BUFFER.get();
+                buffer.clear();
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    md.update(buffer);
+                    buffer.clear();
+                }
             }
-            return result.toString();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return toHex(md.digest());
+    }
+
+    /** Returns a new SHA-1 digest, for a hash computed while the digest
+     *  of this thread computes others. */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns the digest of this thread, ready for a new hash. */
+    static MessageDigest digest() {
+        MessageDigest md = SHA1.get();
+        md.reset();
+        return md;
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the bytes of the hexadecimal numeral HEX, such as a SHA-1
+     *  UID, two digits per byte. */
+    static byte[] fromHex(String hex) {
+        byte[] b = new byte[hex.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) (Character.digit(hex.charAt(2 * i), 16) << 4
+                    | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+        return b;
+    }
+
+    /** The hexadecimal digits, by value. */
+    private static final byte[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f',
+    };
+
+    /** Returns BYTES as a lower case hexadecimal numeral, two digits
+     *  per byte. */
+    static String toHex(byte[] bytes) {
+        byte[] result = new byte[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            result[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(result, StandardCharsets.ISO_8859_1);
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -132,6 +222,33 @@ class Utils {
         }
     }
 
+    /** As writeContents, but the contents are written to a file next to
+     *  FILE first, which then replaces FILE in one rename, so a reader
+     *  or a crash sees either the old contents or the new ones whole.
+     *  That file is named unlike that of any other thread or process
+     *  saving FILE at the same time, and starts with '.', so a reader
+     *  listing the directory can tell it apart. */
+    static void writeAtomically(File file, Object... contents) {
+        File tmp = tempFile(file.getParentFile(), "." + file.getName() + ".");
+        writeContents(tmp, contents);
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a file in DIR, which doesn't exist yet, whose name is
+     *  PREFIX, then a part unlike that of any other thread or process,
+     *  then ".tmp". The part is a random number drawn once per process
+     *  and a count, so unlike Files.createTempFile it needs neither a
+     *  random number nor a file created and opened again per file. */
+    static File tempFile(File dir, String prefix) {
+        return new File(dir, prefix + TEMP_NAME + "." + TEMP_COUNT.incrementAndGet() + ".tmp");
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
@@ -184,6 +301,28 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** Filter out all but directories. */
+    private static final FilenameFilter DIRECTORIES =
+        new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return new File(dir, name).isDirectory();
+            }
+        };
+
+    /** Returns a list of the names of all subdirectories of the directory
+     *  DIR, in lexicographic order as Java Strings.  Returns null if DIR
+     *  does not denote a directory. */
+    static List<String> directoriesIn(File dir) {
+        String[] files = dir.list(DIRECTORIES);
+        if (files == null) {
+            return null;
+        } else {
+            Arrays.sort(files);
+            return Arrays.asList(files);
+        }
+    }
+
     /* OTHER FILE UTILITIES */
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,
@@ -218,6 +357,124 @@ class Utils {
 
 
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write S to OUT as the length of its UTF-8 encoding followed by
+     *  the encoding.  A null S is written as the length -1. */
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /** Write the unsigned number X to OUT in as few bytes as it takes,
+     *  seven bits to a byte, low bits first. */
+    static void writeVarLong(DataOutputStream out, long x) throws IOException {
+        while ((x & ~0x7fL) != 0) {
+            out.writeByte((int) (x & 0x7f) | 0x80);
+            x >>>= 7;
+        }
+        out.writeByte((int) x);
+    }
+
+    /** Return a number written by writeVarLong read from IN. */
+    static long readVarLong(DataInputStream in) throws IOException {
+        long x = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            x |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return x;
+            }
+        }
+    }
+
+    /** A ByteArrayOutputStream that doesn't lock on every write, for
+     *  encoding many small fields. */
+    static class Bytes extends ByteArrayOutputStream {
+        Bytes(int size) {
+            super(size);
+        }
+
+        @Override
+        public void write(int b) {
+            if (count == buf.length) {
+                buf = Arrays.copyOf(buf, 2 * buf.length + 1);
+            }
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (count + len > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(2 * buf.length, count + len));
+            }
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+    }
+
+    /** Return a stream reading BYTES. Unlike ByteArrayInputStream it
+     *  doesn't lock on every read, which adds up when decoding many
+     *  small fields. */
+    static DataInputStream dataInput(byte[] bytes) {
+        return new DataInputStream(new InputStream() {
+            private int pos;
+
+            @Override
+            public int read() {
+                return pos < bytes.length ? bytes[pos++] & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (pos >= bytes.length) {
+                    return len == 0 ? 0 : -1;
+                }
+                int n = Math.min(len, bytes.length - pos);
+                System.arraycopy(bytes, pos, b, off, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public long skip(long n) {
+                long k = Math.max(0, Math.min(n, bytes.length - pos));
+                pos += (int) k;
+                return k;
+            }
+        });
+    }
+
+    /** Return a String written by writeString read from IN. */
+    static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
     /* MESSAGES AND ERROR REPORTING */
 
     /** Return a GitletException whose message is composed from MSG and ARGS as
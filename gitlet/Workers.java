@@ -0,0 +1,68 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/** A bounded pool of worker threads for hashing, reading and writing
+ *  many files at once. The pool has one thread per core unless set
+ *  with -Dgitlet.threads.
+ *  @author Tianyi Xu
+ */
+class Workers {
+    /** Number of worker threads. */
+    static final int THREADS = Integer.getInteger("gitlet.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    /* Created on first use, so single file commands don't start threads */
+    private static ExecutorService pool;
+
+    private static synchronized ExecutorService pool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(THREADS, r -> {
+                Thread t = new Thread(r, "gitlet-worker");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return pool;
+    }
+
+    /** Return the results of applying FN to each of ITEMS, in the order of
+     *  ITEMS. The calls run in parallel, so FN must not modify shared state.
+     *  They see the repository of the calling thread as theirs.
+     *  Rethrows the first exception thrown by FN, in the order of ITEMS. */
+    static <T, R> List<R> map(List<T> items, Function<T, R> fn) {
+        List<R> results = new ArrayList<>(items.size());
+        if (THREADS <= 1 || items.size() <= 1) {
+            for (T item : items) {
+                results.add(fn.apply(item));
+            }
+            return results;
+        }
+
+        Repository repo = Repository.current();
+        List<Future<R>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            futures.add(pool().submit(() -> repo.bind(() -> fn.apply(item))));
+        }
+        for (Future<R> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) excp.getCause();
+                }
+                throw new IllegalStateException(excp.getCause());
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(excp);
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,147 @@
+package gitlet;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/** Tests of the pool of workers and of the commands that hash, read and
+ *  write files with it. The Makefile runs the tests with several
+ *  workers, whatever the number of cores.
+ *  @author Tianyi Xu
+ */
+public class WorkersTest {
+
+    /** Return the integers from 0 to N - 1. */
+    private static List<Integer> range(int n) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    /** Sleep for MILLIS milliseconds. */
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    @Test
+    public void resultsKeepTheOrderOfTheItems() {
+        UnitTest.scratchRepository();
+        List<Integer> items = range(200);
+        /* the first items finish last */
+        List<Integer> squares = Workers.map(items, i -> {
+            sleep(i < 8 ? 20 - i : 0);
+            return i * i;
+        });
+        assertEquals(items.size(), squares.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(i * i, (int) squares.get(i));
+        }
+        assertEquals(List.of(), Workers.map(List.<Integer>of(), i -> i));
+    }
+
+    @Test
+    public void poolRunsAsManyWorkersAsItIsSetTo() {
+        Repository repo = UnitTest.scratchRepository();
+        Set<Thread> threads = new HashSet<>();
+        List<Integer> items = range(100);
+        List<Repository> seen = Workers.map(items, i -> {
+            synchronized (threads) {
+                threads.add(Thread.currentThread());
+            }
+            return Repository.current();
+        });
+        assertTrue(threads.size() <= Workers.THREADS);
+        for (Repository current : seen) {
+            assertSame(repo, current);
+        }
+
+        /* each of THREADS items waits for all the others */
+        if (Workers.THREADS > 1) {
+            CyclicBarrier barrier = new CyclicBarrier(Workers.THREADS);
+            Workers.map(range(Workers.THREADS), i -> {
+                try {
+                    return barrier.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException | BrokenBarrierException
+                         | TimeoutException excp) {
+                    throw new IllegalStateException(excp);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void firstExceptionInTheOrderOfTheItemsIsThrown() {
+        UnitTest.scratchRepository();
+        try {
+            Workers.map(range(10), i -> {
+                if (i == 3) {
+                    sleep(50);
+                    throw Utils.error("three");
+                } else if (i == 7) {
+                    throw Utils.error("seven");
+                }
+                return i;
+            });
+            fail("expected GitletException");
+        } catch (GitletException excp) {
+            assertEquals("three", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void manyFilesAreAddedAndCheckedOutInOrder() {
+        Repository repo = UnitTest.scratchRepository();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            String name = String.format("d%d/f%03d.txt", i % 4, i);
+            File file = new File(repo.root, name);
+            file.getParentFile().mkdirs();
+            Utils.writeContents(file, "file " + i);
+            names.add(name);
+        }
+        repo.branch("empty");
+        repo.add(names.toArray(new String[0]));
+        List<String> sorted = new ArrayList<>(names);
+        sorted.sort(null);
+        assertEquals(sorted, repo.status().staged);
+        String id = repo.commit("many");
+        assertEquals(120, Commit.readCommit(id).getBlobs().size());
+
+        /* a file that doesn't exist fails the add, wherever it is */
+        List<String> withMissing = new ArrayList<>(names);
+        withMissing.add(60, "missing.txt");
+        try {
+            repo.add(withMissing.toArray(new String[0]));
+            fail("expected GitletException");
+        } catch (GitletException excp) {
+            assertEquals("File does not exist.", excp.getMessage());
+        }
+
+        repo.checkout("empty");
+        for (String name : names) {
+            assertFalse(name, new File(repo.root, name).exists());
+        }
+        repo.checkout("master");
+        for (int i = 0; i < names.size(); i++) {
+            assertEquals("file " + i, Utils.readContentsAsString(
+                    new File(repo.root, names.get(i))));
+        }
+        assertTrue(repo.status().modified.isEmpty());
+    }
+}